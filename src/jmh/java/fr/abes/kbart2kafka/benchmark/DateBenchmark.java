@@ -0,0 +1,65 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import fr.abes.kbart2kafka.exception.IllegalDateException;
+import fr.abes.kbart2kafka.utils.KbartDateNormalizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Normalisation des dates kbart : ancienne implémentation par expressions régulières compilées à chaque appel
+ * comparée à {@link KbartDateNormalizer}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class DateBenchmark {
+    @Param({"2024-03-03", "2024-03", "2024", ""})
+    public String date;
+
+    private byte[] dateBytes;
+
+    @Setup
+    public void setUp() {
+        dateBytes = date.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String regex() throws IllegalDateException {
+        return legacyReformatDateKbart(date);
+    }
+
+    @Benchmark
+    public String normalizer() throws IllegalDateException {
+        return KbartDateNormalizer.normalize(date);
+    }
+
+    @Benchmark
+    public Object normalizerBytes() {
+        return KbartDateNormalizer.detect(dateBytes, 0, dateBytes.length);
+    }
+
+    static String legacyReformatDateKbart(String dateToFormat) throws IllegalDateException {
+        if (dateToFormat == null || dateToFormat.isEmpty())
+            return "";
+        Matcher matcher = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
+        if (matcher.find()) {
+            return dateToFormat;
+        }
+        matcher = Pattern.compile("(\\d{4}-\\d{2})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
+        if (matcher.find()) {
+            return dateToFormat + "-01";
+        }
+        matcher = Pattern.compile("(\\d{4})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
+        if (matcher.find()) {
+            return dateToFormat + "-01-01";
+        }
+        throw new IllegalDateException("Format de date non reconnu");
+    }
+}
@@ -0,0 +1,62 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import fr.abes.kbart2kafka.service.ValidationService;
+import fr.abes.kbart2kafka.utils.CheckFiles;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contrôle complet d'un fichier kbart : entête et nom du fichier ({@link CheckFiles#verifyFile(File, String)})
+ * puis lecture et contrôle de toutes les lignes ({@link FileService#verifyLines(File, Job)}), et contrôle à blanc
+ * du fichier par portions en parallèle avec statistiques ({@link ValidationService#validate(File)})
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class IngestionBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int nbLines;
+
+    private File file;
+    private FileService fileService;
+    private ValidationService validationService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = KbartGenerator.generate(nbLines);
+        fileService = new FileService(null, null, null, null, new IngestionMetrics(new SimpleMeterRegistry()));
+        validationService = new ValidationService(KbartGenerator.HEADER, file.getParent(), 0, 1024 * 1024);
+        ReflectionTestUtils.invokeMethod(validationService, "init");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(validationService, "shutdown");
+    }
+
+    @Benchmark
+    public void verifyFile() throws Exception {
+        CheckFiles.verifyFile(file, KbartGenerator.HEADER);
+    }
+
+    @Benchmark
+    public int verifyLines() throws Exception {
+        return fileService.verifyLines(file, new Job(file.getName()));
+    }
+
+    @Benchmark
+    public long validate() throws Exception {
+        return validationService.validate(file).getStatistics().getLines();
+    }
+}
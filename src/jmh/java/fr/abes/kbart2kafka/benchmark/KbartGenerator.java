@@ -0,0 +1,94 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Génération de fichiers kbart synthétiques dont la forme (longueur des colonnes, dates, types de publication)
+ * est proche de celle des fichiers fournisseurs réels
+ */
+public class KbartGenerator {
+    public static final String HEADER = "publication_title\tprint_identifier\tonline_identifier\tdate_first_issue_online\tnum_first_vol_online\tnum_first_issue_online\tdate_last_issue_online\tnum_last_vol_online\tnum_last_issue_online\ttitle_url\tfirst_author\ttitle_id\tembargo_info\tcoverage_depth\tnotes\tpublisher_name\tpublication_type\tdate_monograph_published_print\tdate_monograph_published_online\tmonograph_volume\tmonograph_edition\tfirst_editor\tparent_publication_title_id\tpreceding_publication_title_id\taccess_type";
+
+    private static final String[] TITLE_WORDS = {"Advances", "in", "Chemical", "Research", "Journal", "of", "Applied", "Physics", "Études", "littéraires", "Handbook", "Mathématiques", "Society", "Review"};
+
+    private KbartGenerator() {
+    }
+
+    /**
+     * @param nbLines nombre de lignes de données (hors entête)
+     * @return un fichier temporaire supprimé à l'arrêt de la JVM, nommé selon la convention des fichiers kbart
+     */
+    public static File generate(int nbLines) throws IOException {
+        File dir = Files.createTempDirectory("kbart-bench").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "PROVIDER_CONSORTIUM_PACKAGE_2024-01-01.tsv");
+        file.deleteOnExit();
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (int i = 0; i < nbLines; i++) {
+                writer.write(line(random, i));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+
+    public static String line(Random random, int index) {
+        boolean serial = random.nextInt(3) == 0;
+        StringBuilder sb = new StringBuilder(320);
+        int nbWords = 2 + random.nextInt(6);
+        for (int w = 0; w < nbWords; w++) {
+            if (w > 0) sb.append(' ');
+            sb.append(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+        }
+        sb.append('\t').append(serial ? issn(random) : isbn(random));
+        sb.append('\t').append(serial ? issn(random) : isbn(random));
+        sb.append('\t').append(serial ? date(random) : "");
+        sb.append('\t').append(serial ? String.valueOf(1 + random.nextInt(50)) : "");
+        sb.append('\t').append(serial ? String.valueOf(1 + random.nextInt(12)) : "");
+        sb.append('\t').append(serial && random.nextBoolean() ? date(random) : "");
+        sb.append('\t').append("");
+        sb.append('\t').append("");
+        sb.append('\t').append("https://link.provider.com/title/").append(index);
+        sb.append('\t').append(serial ? "" : "Author" + random.nextInt(10000));
+        sb.append('\t').append("id").append(index);
+        sb.append('\t').append(random.nextInt(10) == 0 ? "P1Y" : "");
+        sb.append('\t').append("fulltext");
+        sb.append('\t').append("");
+        sb.append('\t').append("Springer Nature");
+        sb.append('\t').append(serial ? "serial" : "monograph");
+        sb.append('\t').append(serial ? "" : date(random));
+        sb.append('\t').append(serial ? "" : date(random));
+        sb.append('\t').append(serial ? "" : String.valueOf(random.nextInt(20)));
+        sb.append('\t').append(serial ? "" : String.valueOf(1 + random.nextInt(5)));
+        sb.append('\t').append(serial ? "" : "Editor" + random.nextInt(1000));
+        sb.append('\t').append("");
+        sb.append('\t').append("");
+        sb.append('\t').append(random.nextBoolean() ? "P" : "F");
+        return sb.toString();
+    }
+
+    private static String issn(Random random) {
+        return String.format("%04d-%04d", random.nextInt(10000), random.nextInt(10000));
+    }
+
+    private static String isbn(Random random) {
+        return "978" + String.format("%010d", (long) random.nextInt(Integer.MAX_VALUE));
+    }
+
+    private static String date(Random random) {
+        int year = 1950 + random.nextInt(75);
+        return switch (random.nextInt(3)) {
+            case 0 -> String.valueOf(year);
+            case 1 -> String.format("%d-%02d", year, 1 + random.nextInt(12));
+            default -> String.format("%d-%02d-%02d", year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import fr.abes.kbart2kafka.exception.IllegalDateException;
+import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import fr.abes.kbart2kafka.utils.Utf8Validator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traitements unitaires appliqués à chaque ligne d'un fichier kbart
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class LineBenchmark {
+    private static final int NB_LINES = 10_000;
+
+    private String[] lignes;
+    private byte[][] lignesUtf8;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+    private String[][] colonnes;
+    private FileService fileService;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        lignes = new String[NB_LINES];
+        colonnes = new String[NB_LINES][];
+        lignesUtf8 = new byte[NB_LINES][];
+        for (int i = 0; i < NB_LINES; i++) {
+            lignes[i] = KbartGenerator.line(random, i);
+            colonnes[i] = lignes[i].split("\t");
+            lignesUtf8[i] = lignes[i].getBytes(StandardCharsets.UTF_8);
+        }
+        fileService = new FileService(null, null, null, null, new IngestionMetrics(new SimpleMeterRegistry()));
+    }
+
+    private int next() {
+        int current = index;
+        index = (index + 1) % NB_LINES;
+        return current;
+    }
+
+    /**
+     * Contrôle de l'encodage sur les octets de la ligne, tel qu'il est fait au chargement
+     */
+    @Benchmark
+    public int utf8Validator() {
+        byte[] octets = lignesUtf8[next()];
+        return Utf8Validator.indexOfInvalid(octets, 0, octets.length);
+    }
+
+    /**
+     * Décodage complet de la ligne par le JDK, pour comparaison
+     */
+    @Benchmark
+    public CharBuffer utf8Decoder() throws CharacterCodingException {
+        return decoder.decode(ByteBuffer.wrap(lignesUtf8[next()]));
+    }
+
+    @Benchmark
+    public LigneKbartDto constructDto() throws IllegalFileFormatException, IllegalDateException {
+        int i = next();
+        return fileService.constructDto(colonnes[i], i + 2, NB_LINES);
+    }
+}
@@ -0,0 +1,171 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.partition.PartitionStrategies;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializers;
+import fr.abes.kbart2kafka.service.DeltaService;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.apache.logging.log4j.ThreadContext;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilder;
+import org.apache.logging.log4j.core.config.builder.api.ConfigurationBuilderFactory;
+import org.apache.logging.log4j.core.config.builder.impl.BuiltConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Coût des logs sur le chargement d'un fichier : logs désactivés, écrits par le thread de chargement (sync) ou par
+ * l'appender asynchrone de log4j2-all.xml (async).
+ * Faute de broker, l'appender Kafka est remplacé par un fichier json vidé à chaque événement (target/benchmark-logs),
+ * une écriture bloquante par événement comme l'appender Kafka en envoi synchrone.
+ * Le fichier en erreur contient une date incorrecte toutes les 10 lignes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class LoggingBenchmark {
+    private static final String TOPIC = "bacon.kbart.toload";
+
+    @Param({"off", "sync", "async"})
+    public String logging;
+
+    @Param({"10000"})
+    public int nbLines;
+
+    private File file;
+    private File fileOnError;
+    private MockProducer<String, byte[]> producer;
+    private FileService fileService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Configurator.reconfigure(configuration(logging));
+        file = KbartGenerator.generate(nbLines);
+        fileOnError = generateOnError(nbLines);
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = IntStream.range(0, 8)
+                .mapToObj(i -> new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}))
+                .toList();
+        Cluster cluster = new Cluster("kbart", List.of(node), partitions, Set.of(), Set.of());
+        producer = new MockProducer<>(cluster, true, null, new StringSerializer(), new ByteArraySerializer()) {
+            @Override
+            public void close(Duration timeout) {
+                // le KafkaTemplate ferme le producteur après chaque envoi hors transaction
+            }
+        };
+        MockEnvironment environment = new MockEnvironment();
+        fileService = new FileService(new KafkaTemplate<>(() -> producer),
+                new LigneKbartSerializers(environment, new ObjectMapper()),
+                new PartitionStrategies(environment),
+                new DeltaService(false, "target/"),
+                new IngestionMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "topicKbart", TOPIC);
+        ReflectionTestUtils.setField(fileService, "nbThread", 4);
+        ReflectionTestUtils.setField(fileService, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(fileService, "maxInFlightRecords", 10000);
+        ReflectionTestUtils.setField(fileService, "maxInFlightBytes", 33554432);
+        ReflectionTestUtils.setField(fileService, "acknowledgementTimeout", 300000L);
+        ReflectionTestUtils.setField(fileService, "reportMaxRanges", 20);
+        ReflectionTestUtils.setField(fileService, "reportMaxSamples", 5);
+        ReflectionTestUtils.setField(fileService, "reportMaxErrors", 20);
+        ReflectionTestUtils.invokeMethod(fileService, "init");
+        // contexte de log posé une fois par traitement, comme JobService
+        ThreadContext.put("package", file.getName());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ReflectionTestUtils.invokeMethod(fileService, "shutdown");
+        ThreadContext.clearAll();
+        Configurator.shutdown(null);
+    }
+
+    @Benchmark
+    public long loadFile() throws Exception {
+        Job job = new Job(file.getName());
+        fileService.loadFile(file, job);
+        producer.clear();
+        return job.getLinesAcknowledged().get();
+    }
+
+    @Benchmark
+    public long verifyLinesOnError() throws Exception {
+        Job job = new Job(fileOnError.getName());
+        try {
+            fileService.verifyLines(fileOnError, job);
+        } catch (IllegalFileFormatException e) {
+            // attendu : le rapport de contrôle a été publié
+        }
+        return job.getErrors().get();
+    }
+
+    private static BuiltConfiguration configuration(String logging) {
+        ConfigurationBuilder<BuiltConfiguration> builder = ConfigurationBuilderFactory.newConfigurationBuilder();
+        builder.setStatusLevel(org.apache.logging.log4j.Level.WARN);
+        builder.add(builder.newAppender("file", "File")
+                .addAttribute("fileName", "target/benchmark-logs/kbart2kafka-" + logging + ".json")
+                .addAttribute("immediateFlush", true)
+                .add(builder.newLayout("JsonLayout")));
+        String appender = "file";
+        if ("async".equals(logging)) {
+            builder.add(builder.newAppender("async", "Async")
+                    .addAttribute("bufferSize", 8192)
+                    .addAttribute("includeLocation", false)
+                    .addComponent(builder.newAppenderRef("file")));
+            appender = "async";
+        }
+        builder.add(builder.newLogger("fr.abes.kbart2kafka", "off".equals(logging) ? org.apache.logging.log4j.Level.OFF : org.apache.logging.log4j.Level.DEBUG)
+                .add(builder.newAppenderRef(appender))
+                .addAttribute("additivity", false));
+        builder.add(builder.newRootLogger(org.apache.logging.log4j.Level.ERROR));
+        return builder.build();
+    }
+
+    private static File generateOnError(int nbLines) throws IOException {
+        File dir = Files.createTempDirectory("kbart-bench").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, "PROVIDER_CONSORTIUM_ERREURS_2024-01-01.tsv");
+        file.deleteOnExit();
+        Random random = new Random(42);
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(KbartGenerator.HEADER);
+            writer.newLine();
+            for (int i = 0; i < nbLines; i++) {
+                String[] fields = KbartGenerator.line(random, i).split("\t", -1);
+                if (i % 10 == 0) {
+                    fields[3] = "01/01/" + (1950 + i % 75);
+                }
+                writer.write(String.join("\t", fields));
+                writer.newLine();
+            }
+        }
+        return file;
+    }
+}
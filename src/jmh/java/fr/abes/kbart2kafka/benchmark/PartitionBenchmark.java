@@ -0,0 +1,74 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import fr.abes.kbart2kafka.partition.IdentifierHashPartitionStrategy;
+import fr.abes.kbart2kafka.partition.PackageHashPartitionStrategy;
+import fr.abes.kbart2kafka.partition.PartitionStrategy;
+import fr.abes.kbart2kafka.partition.RoundRobinPartitionStrategy;
+import fr.abes.kbart2kafka.partition.StickyPartitionStrategy;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calcul de la partition d'envoi selon chaque stratégie, et par plusieurs threads simultanément pour le tour à tour
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PartitionBenchmark {
+    private static final int NB_PARTITIONS = 8;
+    private static final String PACKAGE_KEY = "PROVIDER_PACKAGE";
+
+    private final PartitionStrategy roundRobin = new RoundRobinPartitionStrategy();
+    private final PartitionStrategy packageHash = new PackageHashPartitionStrategy();
+    private final PartitionStrategy identifierHash = new IdentifierHashPartitionStrategy();
+    private final PartitionStrategy sticky = new StickyPartitionStrategy(1000);
+    private LigneKbartDto ligne;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        FileService fileService = new FileService(null, null, null, null, new IngestionMetrics(new SimpleMeterRegistry()));
+        ligne = fileService.constructDto(KbartGenerator.line(new Random(42), 0).split("\t"), 2, 1);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int roundRobin1Thread() {
+        return roundRobin.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int roundRobin4Threads() {
+        return roundRobin.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int roundRobin16Threads() {
+        return roundRobin.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+
+    @Benchmark
+    public int packageHash() {
+        return packageHash.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+
+    @Benchmark
+    public int identifierHash() {
+        return identifierHash.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+
+    @Benchmark
+    public int sticky() {
+        return sticky.partition(PACKAGE_KEY, ligne, NB_PARTITIONS);
+    }
+}
@@ -0,0 +1,118 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.partition.PartitionStrategies;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializers;
+import fr.abes.kbart2kafka.service.DeltaService;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Chargement simultané de 1, 4 et 16 fichiers ({@link FileService#loadFile(File, Job)}) dans un producteur kafka
+ * simulé, avec le pool de threads d'envoi ou avec des threads virtuels.
+ * Les threads virtuels nécessitent Java 21 : sur une JVM plus ancienne, virtualThreads=true mesure le pool de threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class SendBenchmark {
+    private static final String TOPIC = "bacon.kbart.toload";
+    private static final int NB_PARTITIONS = 8;
+
+    @Param({"1", "4", "16"})
+    public int nbFiles;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"10000"})
+    public int nbLines;
+
+    private File file;
+    private MockProducer<String, byte[]> producer;
+    private FileService fileService;
+    private ExecutorService uploads;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        file = KbartGenerator.generate(nbLines);
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = IntStream.range(0, NB_PARTITIONS)
+                .mapToObj(i -> new PartitionInfo(TOPIC, i, node, new Node[]{node}, new Node[]{node}))
+                .toList();
+        Cluster cluster = new Cluster("kbart", List.of(node), partitions, Set.of(), Set.of());
+        producer = new MockProducer<>(cluster, true, null, new StringSerializer(), new ByteArraySerializer()) {
+            @Override
+            public void close(Duration timeout) {
+                // le KafkaTemplate ferme le producteur après chaque envoi hors transaction
+            }
+        };
+        MockEnvironment environment = new MockEnvironment();
+        fileService = new FileService(new KafkaTemplate<>(() -> producer),
+                new LigneKbartSerializers(environment, new ObjectMapper()),
+                new PartitionStrategies(environment),
+                new DeltaService(false, "target/"),
+                new IngestionMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(fileService, "topicKbart", TOPIC);
+        ReflectionTestUtils.setField(fileService, "nbThread", 4);
+        ReflectionTestUtils.setField(fileService, "queueCapacity", 1000);
+        ReflectionTestUtils.setField(fileService, "virtualThreads", virtualThreads);
+        ReflectionTestUtils.setField(fileService, "maxInFlightRecords", 10000);
+        ReflectionTestUtils.setField(fileService, "maxInFlightBytes", 33554432);
+        ReflectionTestUtils.setField(fileService, "acknowledgementTimeout", 300000L);
+        ReflectionTestUtils.invokeMethod(fileService, "init");
+        uploads = Executors.newFixedThreadPool(nbFiles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        uploads.shutdown();
+        ReflectionTestUtils.invokeMethod(fileService, "shutdown");
+    }
+
+    @Benchmark
+    public long loadFiles() throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        List<Future<?>> loads = new ArrayList<>();
+        for (int i = 0; i < nbFiles; i++) {
+            Job job = new Job(file.getName());
+            jobs.add(job);
+            loads.add(uploads.submit(() -> {
+                fileService.loadFile(file, job);
+                return null;
+            }));
+        }
+        for (Future<?> load : loads) {
+            load.get();
+        }
+        // l'historique du producteur simulé n'est pas conservé d'une invocation à l'autre
+        producer.clear();
+        return jobs.stream().mapToLong(job -> job.getLinesAcknowledged().get()).sum();
+    }
+}
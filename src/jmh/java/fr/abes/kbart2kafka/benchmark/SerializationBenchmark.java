@@ -0,0 +1,79 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import fr.abes.kbart2kafka.serialization.AvroLigneKbartSerializer;
+import fr.abes.kbart2kafka.serialization.JsonLigneKbartSerializer;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializer;
+import fr.abes.kbart2kafka.service.FileService;
+import fr.abes.kbart2kafka.service.IngestionMetrics;
+import fr.abes.kbart2kafka.utils.SERIALIZATION_FORMAT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temps de sérialisation et taille des messages selon le format de sérialisation des lignes kbart.
+ * La taille des messages est publiée avec les résultats (voir {@link MessageSize}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SerializationBenchmark {
+    private static final int NB_LINES = 10_000;
+
+    @Param({"json", "avro"})
+    public SERIALIZATION_FORMAT format;
+
+    private LigneKbartDto[] lignes;
+    private LigneKbartSerializer serializer;
+    private int index;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        serializer = format == SERIALIZATION_FORMAT.avro ? new AvroLigneKbartSerializer() : new JsonLigneKbartSerializer(new ObjectMapper());
+        FileService fileService = new FileService(null, null, null, null, new IngestionMetrics(new SimpleMeterRegistry()));
+        Random random = new Random(42);
+        lignes = new LigneKbartDto[NB_LINES];
+        for (int i = 0; i < NB_LINES; i++) {
+            lignes[i] = fileService.constructDto(KbartGenerator.line(random, i).split("\t"), i + 2, NB_LINES);
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(MessageSize size) throws IOException {
+        LigneKbartDto ligne = lignes[index];
+        index = (index + 1) % NB_LINES;
+        byte[] message = serializer.serialize(ligne);
+        size.add(message.length);
+        return message;
+    }
+
+    /**
+     * Octets et messages sérialisés, publiés dans les résultats de JMH (serialize:bytes et serialize:messages).
+     * JMH additionne ces compteurs sur les itérations de mesure : la taille moyenne d'un message est bytes / messages.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MessageSize {
+        public long bytes;
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+            messages = 0;
+        }
+
+        void add(int length) {
+            bytes += length;
+            messages++;
+        }
+    }
+}
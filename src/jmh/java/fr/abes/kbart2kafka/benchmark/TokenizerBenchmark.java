@@ -0,0 +1,101 @@
+package fr.abes.kbart2kafka.benchmark;
+
+import fr.abes.kbart2kafka.utils.KbartColumns;
+import fr.abes.kbart2kafka.utils.KbartTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparaison du découpage des lignes par {@code String.split("\t")} et par {@link KbartTokenizer}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class TokenizerBenchmark {
+    private static final byte[] SERIAL = "serial".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1000000"})
+    public int nbLines;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = KbartGenerator.generate(nbLines);
+    }
+
+    /**
+     * Contrôles de structure tels qu'ils étaient faits avec split : tabulation, publication_title, nombre de colonnes, type
+     */
+    @Benchmark
+    public void splitChecks(Blackhole bh) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bh.consume(line.contains("\t"));
+                bh.consume(line.split("\t")[0].isEmpty());
+                String[] fields = line.split("\t");
+                bh.consume(fields.length);
+                bh.consume(fields.length > 16 && fields[16].equals("serial"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void tokenizerChecks(Blackhole bh) throws IOException {
+        try (KbartTokenizer tokenizer = KbartTokenizer.open(file)) {
+            while (tokenizer.nextLine()) {
+                bh.consume(tokenizer.hasTabulation());
+                bh.consume(tokenizer.isFieldEmpty(0));
+                bh.consume(tokenizer.fieldCount());
+                bh.consume(tokenizer.fieldEquals(16, SERIAL));
+            }
+        }
+    }
+
+    /**
+     * Découpage avec création de toutes les colonnes, comme pour la construction de la dto
+     */
+    @Benchmark
+    public void splitFields(Blackhole bh) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bh.consume(line.split("\t"));
+            }
+        }
+    }
+
+    @Benchmark
+    public void tokenizerFields(Blackhole bh) throws IOException {
+        try (KbartTokenizer tokenizer = KbartTokenizer.open(file)) {
+            while (tokenizer.nextLine()) {
+                bh.consume(tokenizer.fields());
+            }
+        }
+    }
+
+    /**
+     * Colonnes kbart dans l'ordre de la dto, selon la correspondance établie à partir de l'entête
+     */
+    @Benchmark
+    public void tokenizerColumns(Blackhole bh) throws IOException {
+        try (KbartTokenizer tokenizer = KbartTokenizer.open(file)) {
+            tokenizer.nextLine();
+            KbartColumns columns = KbartColumns.compile(tokenizer.line());
+            while (tokenizer.nextLine()) {
+                bh.consume(columns.fields(tokenizer));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package fr.abes.kbart2kafka;
+
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.service.BatchService;
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Chargement en ligne de commande d'un lot de fichiers kbart :
+ * {@code java -jar kbart2kafka.jar --abes.batch.pattern=BRILL_*.tsv --spring.main.web-application-type=none}
+ * L'application s'arrête une fois tous les fichiers traités, avec un code retour 1 si au moins un fichier est en erreur.
+ */
+@Component
+@ConditionalOnProperty(name = "abes.batch.pattern")
+@Slf4j
+public class KbartBatchRunner implements CommandLineRunner {
+    private final BatchService batchService;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${abes.batch.pattern}")
+    private String pattern;
+
+    public KbartBatchRunner(BatchService batchService, ConfigurableApplicationContext context) {
+        this.batchService = batchService;
+        this.context = context;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        List<Job> jobs = batchService.submit(pattern);
+        int nbErrors = 0;
+        for (Job job : jobs) {
+            job.awaitFinished();
+            if (job.getState() == JOB_STATE.FAILED) {
+                nbErrors++;
+            }
+        }
+        log.info("{} fichiers chargés, {} fichiers en erreur", jobs.size() - nbErrors, nbErrors);
+        int exitCode = (jobs.isEmpty() || nbErrors > 0) ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
@@ -0,0 +1,55 @@
+package fr.abes.kbart2kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.service.ValidationService;
+import fr.abes.kbart2kafka.validation.ValidationResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Contrôle à blanc en ligne de commande d'un lot de fichiers kbart, sans envoi dans kafka :
+ * {@code java -jar kbart2kafka.jar --abes.validate.pattern=BRILL_*.tsv --spring.main.web-application-type=none}
+ * Le résultat de chaque fichier est écrit au format json sur la sortie standard, et non dans les logs : les logs de
+ * l'application sont publiés sur le topic de logs. L'application s'arrête une fois tous les fichiers contrôlés,
+ * avec un code retour 1 si au moins un fichier est invalide.
+ * Le contrôle n'interroge pas la base, mais l'application démarre avec toute sa configuration : une connexion à la base
+ * Bacon est ouverte au démarrage.
+ */
+@Component
+@ConditionalOnProperty(name = "abes.validate.pattern")
+public class KbartValidationRunner implements CommandLineRunner {
+
+    private final ValidationService validationService;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext context;
+
+    @Value("${abes.validate.pattern}")
+    private String pattern;
+
+    public KbartValidationRunner(ValidationService validationService, ObjectMapper objectMapper, ConfigurableApplicationContext context) {
+        this.validationService = validationService;
+        this.objectMapper = objectMapper;
+        this.context = context;
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        List<ValidationResult> results = validationService.validateFiles(pattern);
+        int nbInvalid = 0;
+        for (ValidationResult result : results) {
+            if (!result.isValid()) {
+                nbInvalid++;
+            }
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(result));
+        }
+        System.out.println((results.size() - nbInvalid) + " fichiers valides, " + nbInvalid + " fichiers invalides");
+        int exitCode = (results.isEmpty() || nbInvalid > 0) ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> exitCode));
+    }
+}
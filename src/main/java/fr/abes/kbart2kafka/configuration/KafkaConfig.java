@@ -1,6 +1,7 @@
 package fr.abes.kbart2kafka.configuration;
 
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -20,25 +21,70 @@ public class KafkaConfig {
     @Value("${abes.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // Profil du producteur orienté débit pour l'envoi des lignes kbart
+    @Value("${abes.kafka.producer.batch-size:131072}")
+    private int batchSize;
+    @Value("${abes.kafka.producer.linger-ms:20}")
+    private int lingerMs;
+    @Value("${abes.kafka.producer.compression-type:lz4}")
+    private String compressionType;
+    @Value("${abes.kafka.producer.buffer-memory:67108864}")
+    private long bufferMemory;
+    @Value("${abes.kafka.producer.max-in-flight:5}")
+    private int maxInFlight;
+    @Value("${abes.kafka.producer.enable-idempotence:true}")
+    private boolean enableIdempotence;
+    @Value("${abes.kafka.producer.acks:all}")
+    private String acks;
+
+    // Chargement transactionnel : les lignes d'un fichier ne sont visibles des consommateurs read_committed qu'une fois validées
+    @Value("${abes.kafka.transaction.enabled:false}")
+    private boolean transactional;
+    @Value("${abes.kafka.transaction.id-prefix:kbart2kafka-tx-}")
+    private String transactionIdPrefix;
+    @Value("${abes.kafka.transaction.timeout-ms:900000}")
+    private int transactionTimeoutMs;
+
     @Bean
     public Map<String, Object> producerConfigs() {
         Map<String, Object> props = new HashMap<>();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
-        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        // les lignes sont sérialisées par LigneKbartSerializer selon le format choisi pour le topic
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        props.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        props.put(ProducerConfig.BUFFER_MEMORY_CONFIG, bufferMemory);
+        // l'idempotence garantit l'absence de doublons et l'ordre des envois jusqu'à 5 requêtes en vol
+        props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, maxInFlight);
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, enableIdempotence);
+        props.put(ProducerConfig.ACKS_CONFIG, acks);
+        if (transactional) {
+            // un producteur transactionnel est obligatoirement idempotent
+            props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+            props.put(ProducerConfig.ACKS_CONFIG, "all");
+            props.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, Math.min(maxInFlight, 5));
+            props.put(ProducerConfig.TRANSACTION_TIMEOUT_CONFIG, transactionTimeoutMs);
+        }
         return props;
     }
 
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
-        DefaultKafkaProducerFactory<String, String> factory = new DefaultKafkaProducerFactory<>(producerConfigs());
-        //factory.setTransactionIdPrefix(transactionIdPrefix);
-        return new DefaultKafkaProducerFactory<>(producerConfigs());
+    public ProducerFactory<String, byte[]> producerFactory() {
+        DefaultKafkaProducerFactory<String, byte[]> factory = new DefaultKafkaProducerFactory<>(producerConfigs());
+        if (transactional) {
+            factory.setTransactionIdPrefix(transactionIdPrefix);
+        }
+        return factory;
     }
 
     @Bean
-    public KafkaTemplate<String, String> kafkaTemplate() {
-        return new KafkaTemplate<>(producerFactory());
+    public KafkaTemplate<String, byte[]> kafkaTemplate() {
+        KafkaTemplate<String, byte[]> template = new KafkaTemplate<>(producerFactory());
+        // lecture des métadonnées des topics hors transaction
+        template.setAllowNonTransactional(true);
+        return template;
     }
 
 
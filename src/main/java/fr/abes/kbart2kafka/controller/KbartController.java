@@ -1,101 +1,212 @@
 package fr.abes.kbart2kafka.controller;
 
-import fr.abes.kbart2kafka.exception.IllegalDateException;
-import fr.abes.kbart2kafka.exception.IllegalPackageException;
-import fr.abes.kbart2kafka.exception.IllegalProviderException;
-import fr.abes.kbart2kafka.service.FileService;
-import fr.abes.kbart2kafka.service.ProviderPackageService;
-import fr.abes.kbart2kafka.utils.CheckFiles;
-import fr.abes.kbart2kafka.utils.Utils;
+import fr.abes.kbart2kafka.dto.JobDto;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.service.BatchService;
+import fr.abes.kbart2kafka.service.JobService;
+import fr.abes.kbart2kafka.service.ValidationService;
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import fr.abes.kbart2kafka.validation.ValidationResult;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.logging.log4j.ThreadContext;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 
 @RestController
 @CrossOrigin(origins = "*")
 @RequestMapping("/api/v1")
 @Slf4j
 public class KbartController {
-    @Value("${kbart.header}")
-    private String kbartHeader;
+    private static final String LINES_HEADER = "X-Kbart-Lines";
+
+    // attributs de requête du sendfile de Tomcat
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     @Value("${abes.pathToKbart}")
     private String pathToKbart;
-    private final FileService fileService;
 
-    private final ProviderPackageService providerPackageService;
+    @Value("${server.compression.enabled:false}")
+    private boolean compressionEnabled;
+
+    private final JobService jobService;
 
-    public KbartController(FileService fileService, ProviderPackageService providerPackageService) {
-        this.fileService = fileService;
-        this.providerPackageService = providerPackageService;
+    private final BatchService batchService;
+
+    private final ValidationService validationService;
+
+    public KbartController(JobService jobService, BatchService batchService, ValidationService validationService) {
+        this.jobService = jobService;
+        this.batchService = batchService;
+        this.validationService = validationService;
     }
 
+    /**
+     * Lance le chargement asynchrone d'un fichier kbart
+     *
+     * @param fileName nom du fichier dans le répertoire des fichiers kbart
+     * @return le traitement créé, dont l'avancement peut être suivi via /jobs/{id}
+     */
     @PostMapping(value = "/uploadFile/{fileName}")
-    public void uploadFile(@PathVariable String fileName) {
-        long startTime = System.currentTimeMillis();
+    public ResponseEntity<JobDto> uploadFile(@PathVariable String fileName) {
         //	Contrôle de la présence d'un paramètre au lancement de Kbart2kafkaApplication
         if (fileName == null || fileName.isEmpty()) {
             log.error("Message envoyé : {}", "Le chemin d'accès au fichier tsv n'a pas été trouvé dans les paramètres de l'application");
-        } else {
-            ThreadContext.put("package", fileName);
-            log.info("Debut envois kafka de : {}", fileName);
-            //	Récupération du chemin d'accès au fichier
-            File tsvFile = new File(pathToKbart + fileName);
-            try {
-                CheckFiles.verifyFile(tsvFile, kbartHeader);
-                checkExistingPackage(tsvFile.getName());
-                fileService.loadFile(tsvFile);
-            } catch (Exception | IllegalPackageException e) {
-                log.error(e.getMessage());
-                log.info("Traitement refusé du fichier {}", tsvFile.getName());
-            }
+            return ResponseEntity.badRequest().build();
         }
-        long endTime = System.currentTimeMillis();
-        double executionTime = (double) (endTime - startTime) / 1000;
-        log.debug("Temps d'exécution : {} secondes", executionTime);
+        Job job = jobService.submit(fileName);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/jobs/" + job.getId()))
+                .body(new JobDto(job));
     }
 
-    @GetMapping("/file/{filename}")
-    public ResponseEntity<?> getLogsFromPackageAndDate(@PathVariable String filename) {
-        if (filename == null || filename.isEmpty()) {
-            return ResponseEntity.badRequest().body("Le paramètre filename est vide.");
+    /**
+     * Lance le chargement asynchrone d'un lot de fichiers kbart
+     *
+     * @param pattern sous-répertoire ou motif glob (ex : BRILL_*.tsv) relatif au répertoire des fichiers kbart
+     * @return les traitements créés, un par fichier
+     */
+    @PostMapping(value = "/uploadFiles")
+    public ResponseEntity<List<JobDto>> uploadFiles(@RequestParam(defaultValue = "") String pattern) throws IOException {
+        List<Job> jobs = batchService.submit(pattern);
+        if (jobs.isEmpty()) {
+            log.error("Aucun fichier ne correspond à {}", pattern);
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.accepted().body(jobs.stream().map(JobDto::new).toList());
+    }
 
-        try {
-            File fichier = new File(pathToKbart + filename);
-
-            if (!fichier.exists()) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Le fichier " + filename + " est introuvable.");
-            }
+    /**
+     * Chargement d'un fichier kbart envoyé dans le corps de la requête (éventuellement en chunked) : les lignes sont
+     * contrôlées et envoyées dans kafka au fur et à mesure de leur réception. La réponse est renvoyée une fois le
+     * fichier entièrement reçu et chargé.
+     *
+     * @param fileName nom du fichier (.tsv, .tsv.gz, .tsv.zst ou .zip)
+     * @param nbLines  nombre de lignes de données du fichier, hors entête (header X-Kbart-Lines)
+     * @param store    conservation du fichier reçu dans le répertoire des fichiers kbart (téléchargeable via /file/{filename})
+     * @return le traitement terminé, avec le statut 422 s'il est en erreur
+     */
+    @PostMapping(value = "/upload/{fileName}")
+    public ResponseEntity<JobDto> uploadStream(@PathVariable String fileName, @RequestHeader(LINES_HEADER) int nbLines,
+                                               @RequestParam(defaultValue = "true") boolean store, HttpServletRequest request) throws IOException {
+        Job job = jobService.runStream(fileName, request.getInputStream(), nbLines, store);
+        HttpStatus status = job.getState() == JOB_STATE.COMPLETED ? HttpStatus.OK : HttpStatus.UNPROCESSABLE_ENTITY;
+        return ResponseEntity.status(status)
+                .location(URI.create("/api/v1/jobs/" + job.getId()))
+                .body(new JobDto(job));
+    }
 
-            FileInputStream fs = new FileInputStream(fichier);
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<JobDto> getJob(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(job -> ResponseEntity.ok(new JobDto(job)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fichier.getName());
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM); // Use setContentType for better clarity
+    /**
+     * Rapport de contrôle des lignes du fichier d'un traitement : erreurs regroupées par règle et par colonne,
+     * avec les plages de lignes concernées et quelques exemples de valeurs
+     *
+     * @return 404 si le traitement est inconnu ou si le contrôle de ses lignes n'est pas terminé
+     */
+    @GetMapping("/jobs/{id}/report")
+    public ResponseEntity<ValidationReport> getReport(@PathVariable String id) {
+        return jobService.getJob(id)
+                .map(Job::getReport)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .contentLength(fichier.length())
-                    .body(new InputStreamResource(fs));
+    /**
+     * Téléchargement d'un fichier kbart.
+     * Le fichier est envoyé sans copie en mémoire (sendfile de Tomcat) quand le client n'accepte pas gzip, compressé
+     * à la volée sinon (server.compression.enabled). Les requêtes Range (reprise d'un téléchargement interrompu) et
+     * conditionnelles (If-None-Match / If-Modified-Since) sont acceptées : un fichier inchangé n'est pas renvoyé.
+     */
+    @GetMapping("/file/{filename}")
+    public ResponseEntity<?> getLogsFromPackageAndDate(@PathVariable String filename, HttpServletRequest request, WebRequest webRequest) {
+        if (filename == null || filename.isEmpty()) {
+            return ResponseEntity.badRequest().body("Le paramètre filename est vide.");
+        }
+        Path path = resolve(filename);
+        if (path == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Le fichier " + filename + " est introuvable.");
+        }
+        File fichier = path.toFile();
+        long length = fichier.length();
+        long lastModified = fichier.lastModified();
+        // ETag faible : Tomcat ne compresse pas une réponse portant un ETag fort
+        String eTag = "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+        if (webRequest.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDisposition(ContentDisposition.attachment().filename(fichier.getName()).build());
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setETag(eTag);
+        headers.setLastModified(lastModified);
+        if (canSendfile(request)) {
+            request.setAttribute(SENDFILE_FILENAME, fichier.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, length);
+            return ResponseEntity.ok().headers(headers).contentLength(length).build();
+        }
+        // requête Range : Spring renvoie les seules portions demandées du fichier (206 Partial Content)
+        return ResponseEntity.ok().headers(headers).body(new FileSystemResource(fichier));
+    }
 
-        } catch (FileNotFoundException e) {
-            // This should ideally never happen given the file.exists() check, but it's good practice to keep it.
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Erreur lors de la lecture du fichier : " + e.getMessage());
+    /**
+     * Contrôle à blanc d'un fichier du répertoire des fichiers kbart : mêmes contrôles que le chargement, en parallèle
+     * sur les portions du fichier, sans envoi dans kafka ni accès à la base
+     *
+     * @return le résultat du contrôle (statistiques des lignes et premières erreurs), valide ou non
+     */
+    @GetMapping("/validate/{fileName}")
+    public ResponseEntity<ValidationResult> validate(@PathVariable String fileName) throws IOException, InterruptedException {
+        Path path = resolve(fileName);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(validationService.validate(path.toFile()));
     }
 
-    private void checkExistingPackage(String filename) throws IllegalProviderException, IllegalPackageException, IllegalDateException {
-        if (providerPackageService.hasMoreRecentPackageInBdd(Utils.extractProvider(filename), Utils.extractPackageName(filename), Utils.extractDateFilename(filename)))
-            throw new IllegalPackageException("Un package plus récent est déjà présent dans la base");
+    /**
+     * @return le chemin du fichier dans le répertoire des fichiers kbart, null s'il n'existe pas ou est hors du répertoire
+     */
+    private Path resolve(String filename) {
+        Path baseDir = Paths.get(pathToKbart).toAbsolutePath().normalize();
+        Path path = baseDir.resolve(filename).normalize();
+        return path.startsWith(baseDir) && Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Le sendfile de Tomcat transfère le fichier par FileChannel.transferTo directement vers la socket.
+     * Il n'est utilisé ni pour une requête Range ni quand la réponse peut être compressée.
+     */
+    private boolean canSendfile(HttpServletRequest request) {
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED)) || request.getHeader(HttpHeaders.RANGE) != null) {
+            return false;
+        }
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        return !compressionEnabled || acceptEncoding == null || !acceptEncoding.contains("gzip");
     }
 }
@@ -0,0 +1,47 @@
+package fr.abes.kbart2kafka.delta;
+
+import fr.abes.kbart2kafka.utils.OPERATION_TYPE;
+import lombok.Getter;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Lignes d'un fichier à envoyer dans kafka par rapport au dernier fichier chargé du même package :
+ * lignes ajoutées et modifiées (par numéro de ligne dans le fichier) et clés des lignes supprimées
+ */
+@Getter
+public class DeltaPlan {
+    private final boolean full;
+    private final BitSet added;
+    private final BitSet updated;
+    private final List<String> deletedKeys;
+    private final FingerprintIndex index;
+
+    public DeltaPlan(boolean full, BitSet added, BitSet updated, List<String> deletedKeys, FingerprintIndex index) {
+        this.full = full;
+        this.added = added;
+        this.updated = updated;
+        this.deletedKeys = deletedKeys;
+        this.index = index;
+    }
+
+    /**
+     * @param lineNumber numéro de la ligne dans le fichier
+     * @return l'opération à envoyer pour cette ligne, null si la ligne est inchangée
+     */
+    public OPERATION_TYPE operation(int lineNumber) {
+        if (full || added.get(lineNumber)) {
+            return OPERATION_TYPE.ADD;
+        }
+        return updated.get(lineNumber) ? OPERATION_TYPE.UPDATE : null;
+    }
+
+    /**
+     * @param nbLignesFichier nombre de lignes de données du fichier
+     * @return le nombre de messages à envoyer
+     */
+    public int size(int nbLignesFichier) {
+        return full ? nbLignesFichier : added.cardinality() + updated.cardinality() + deletedKeys.size();
+    }
+}
@@ -0,0 +1,179 @@
+package fr.abes.kbart2kafka.delta;
+
+import fr.abes.kbart2kafka.utils.KBART_COLUMN;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Empreintes des lignes du dernier fichier chargé d'un package : pour chaque clé d'identification d'une ligne
+ * (title_id, identifiants et début de couverture), une empreinte 64 bits de l'ensemble de ses colonnes.
+ * Le contenu des lignes n'est pas conservé.
+ */
+public class FingerprintIndex {
+    private static final int MAGIC = 0x4B424958;
+    // version 1 : clés écrites par DataOutputStream.writeUTF, limitées à 65535 octets
+    private static final int VERSION_UTF = 1;
+    // version 2 : clés écrites en UTF-8 précédées de leur longueur en octets
+    private static final int VERSION = 2;
+    private static final char SEPARATOR = '\t';
+    static final int[] KEY_COLUMNS = {KBART_COLUMN.title_id.ordinal(), KBART_COLUMN.online_identifier.ordinal(),
+            KBART_COLUMN.print_identifier.ordinal(), KBART_COLUMN.date_first_issue_online.ordinal(),
+            KBART_COLUMN.num_first_vol_online.ordinal(), KBART_COLUMN.num_first_issue_online.ordinal()};
+    private static final int PUBLICATION_TITLE = KBART_COLUMN.publication_title.ordinal();
+    private static final int TITLE_ID = KBART_COLUMN.title_id.ordinal();
+    private static final int ONLINE_IDENTIFIER = KBART_COLUMN.online_identifier.ordinal();
+    private static final int PRINT_IDENTIFIER = KBART_COLUMN.print_identifier.ordinal();
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<String, Long> fingerprints;
+
+    public FingerprintIndex() {
+        this.fingerprints = new HashMap<>();
+    }
+
+    private FingerprintIndex(Map<String, Long> fingerprints) {
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * Clé d'identification d'une ligne. Sans aucun identifiant, le publication_title est ajouté à la clé.
+     */
+    public static String key(String[] fields) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < KEY_COLUMNS.length; i++) {
+            if (i > 0) {
+                key.append(SEPARATOR);
+            }
+            key.append(field(fields, KEY_COLUMNS[i]));
+        }
+        if (field(fields, TITLE_ID).isEmpty() && field(fields, ONLINE_IDENTIFIER).isEmpty() && field(fields, PRINT_IDENTIFIER).isEmpty()) {
+            key.append(SEPARATOR).append(field(fields, PUBLICATION_TITLE));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Colonnes de la ligne identifiée par une clé, les autres colonnes sont vides
+     */
+    public static String[] fieldsOf(String key) {
+        String[] values = key.split(String.valueOf(SEPARATOR), -1);
+        String[] fields = new String[KBART_COLUMN.values().length];
+        Arrays.fill(fields, "");
+        for (int i = 0; i < KEY_COLUMNS.length && i < values.length; i++) {
+            fields[KEY_COLUMNS[i]] = values[i];
+        }
+        if (values.length > KEY_COLUMNS.length) {
+            fields[PUBLICATION_TITLE] = values[KEY_COLUMNS.length];
+        }
+        return fields;
+    }
+
+    /**
+     * Empreinte FNV-1a 64 bits des colonnes de la ligne, sans les espaces en début et fin de colonne.
+     * Comme pour {@code String.split("\t")}, les colonnes vides en fin de ligne ne sont pas prises en compte.
+     */
+    public static long fingerprint(String[] fields) {
+        int length = fields.length;
+        while (length > 0 && (fields[length - 1] == null || fields[length - 1].isEmpty())) {
+            length--;
+        }
+        long hash = FNV_OFFSET;
+        for (int column = 0; column < length; column++) {
+            String value = (fields[column] == null) ? "" : fields[column].strip();
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+            hash = (hash ^ SEPARATOR) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Empreinte d'une clé présente plusieurs fois dans un fichier, dépendante de l'ordre de ses occurrences
+     */
+    public static long combine(long fingerprint, long next) {
+        return (fingerprint ^ next) * FNV_PRIME + next;
+    }
+
+    private static String field(String[] fields, int index) {
+        return (index < fields.length && fields[index] != null) ? fields[index].strip() : "";
+    }
+
+    public void put(String key, long fingerprint) {
+        fingerprints.put(key, fingerprint);
+    }
+
+    public Long get(String key) {
+        return fingerprints.get(key);
+    }
+
+    public Set<String> keys() {
+        return fingerprints.keySet();
+    }
+
+    public int size() {
+        return fingerprints.size();
+    }
+
+    public static FingerprintIndex read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Le fichier " + path + " n'est pas un index d'empreintes");
+            }
+            int version = in.readInt();
+            if (version != VERSION && version != VERSION_UTF) {
+                throw new IOException("Le fichier " + path + " n'est pas un index d'empreintes");
+            }
+            int size = in.readInt();
+            Map<String, Long> fingerprints = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                String key;
+                if (version == VERSION_UTF) {
+                    key = in.readUTF();
+                } else {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    key = new String(bytes, StandardCharsets.UTF_8);
+                }
+                fingerprints.put(key, in.readLong());
+            }
+            return new FingerprintIndex(fingerprints);
+        }
+    }
+
+    /**
+     * Écriture dans un fichier temporaire puis remplacement de l'index existant, qui n'est jamais lu à moitié écrit
+     */
+    public void write(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(fingerprints.size());
+            for (Map.Entry<String, Long> entry : fingerprints.entrySet()) {
+                // writeUTF est limité à 65535 octets, qu'un long publication_title peut dépasser
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
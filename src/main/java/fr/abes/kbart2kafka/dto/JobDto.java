@@ -0,0 +1,38 @@
+package fr.abes.kbart2kafka.dto;
+
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+public class JobDto {
+    private String id;
+    private String fileName;
+    private JOB_STATE state;
+    private Instant creationDate;
+    private Instant startDate;
+    private Instant endDate;
+    private long linesParsed;
+    private long linesAcknowledged;
+    private long errors;
+    private double throughput;
+    private String message;
+
+    public JobDto(Job job) {
+        this.id = job.getId();
+        this.fileName = job.getFileName();
+        this.state = job.getState();
+        this.creationDate = job.getCreationDate();
+        this.startDate = job.getStartDate();
+        this.endDate = job.getEndDate();
+        this.linesParsed = job.getLinesParsed().get();
+        this.linesAcknowledged = job.getLinesAcknowledged().get();
+        this.errors = job.getErrors().get();
+        this.throughput = job.getThroughput();
+        this.message = job.getMessage();
+    }
+}
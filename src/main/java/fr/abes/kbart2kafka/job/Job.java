@@ -0,0 +1,152 @@
+package fr.abes.kbart2kafka.job;
+
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suivi du chargement d'un fichier kbart : état et compteurs mis à jour par la lecture du fichier et par les
+ * acquittements de kafka
+ */
+@Getter
+public class Job {
+    private final String id;
+    private final String fileName;
+    private final Instant creationDate;
+    private volatile JOB_STATE state;
+    private volatile Instant startDate;
+    private volatile Instant endDate;
+    private volatile String message;
+    /**
+     * rapport de contrôle des lignes du fichier, disponible une fois le contrôle terminé
+     */
+    private volatile ValidationReport report;
+
+    private final AtomicLong linesParsed = new AtomicLong();
+    private final AtomicLong pendingLines = new AtomicLong();
+    private final AtomicLong linesAcknowledged = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    private final Object pendingLock = new Object();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    public Job(String fileName) {
+        this.id = UUID.randomUUID().toString();
+        this.fileName = fileName;
+        this.creationDate = Instant.now();
+        this.state = JOB_STATE.PENDING;
+    }
+
+    public void start() {
+        this.startDate = Instant.now();
+        this.state = JOB_STATE.RUNNING;
+    }
+
+    public void complete() {
+        this.endDate = Instant.now();
+        this.state = JOB_STATE.COMPLETED;
+        finished.countDown();
+    }
+
+    public void fail(String message) {
+        this.message = message;
+        this.endDate = Instant.now();
+        this.state = JOB_STATE.FAILED;
+        finished.countDown();
+    }
+
+    public boolean isFinished() {
+        return state == JOB_STATE.COMPLETED || state == JOB_STATE.FAILED;
+    }
+
+    /**
+     * Attend la fin du traitement, qu'il soit terminé avec succès ou en erreur
+     */
+    public void awaitFinished() throws InterruptedException {
+        finished.await();
+    }
+
+    public void setReport(ValidationReport report) {
+        this.report = report;
+    }
+
+    public void lineParsed() {
+        linesParsed.incrementAndGet();
+    }
+
+    public void error() {
+        errors.incrementAndGet();
+    }
+
+    public void lineSent() {
+        pendingLines.incrementAndGet();
+    }
+
+    public void lineAcknowledged() {
+        linesAcknowledged.incrementAndGet();
+        signalIfNoPending(pendingLines.decrementAndGet());
+    }
+
+    public void sendFailed() {
+        errors.incrementAndGet();
+        signalIfNoPending(pendingLines.decrementAndGet());
+    }
+
+    /**
+     * Attend que kafka ait acquitté (ou refusé) toutes les lignes envoyées. Les lignes toujours en attente au bout
+     * du délai sont comptées en erreur.
+     *
+     * @param timeoutMillis délai d'attente maximum, en millisecondes
+     * @return le nombre de lignes toujours en attente d'acquittement, 0 si toutes les lignes ont été acquittées
+     */
+    public long awaitAcknowledgements(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (pendingLock) {
+            long pending;
+            while ((pending = pendingLines.get()) > 0) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    errors.addAndGet(pending);
+                    return pending;
+                }
+                pendingLock.wait(remaining);
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * @return nombre de lignes acquittées par kafka par seconde depuis le début du traitement
+     */
+    public double getThroughput() {
+        if (startDate == null) {
+            return 0;
+        }
+        long millis = Math.max(1, getDuration().toMillis());
+        return linesAcknowledged.get() * 1000d / millis;
+    }
+
+    /**
+     * @return durée du traitement depuis son démarrage, jusqu'à sa fin s'il est terminé
+     */
+    public Duration getDuration() {
+        if (startDate == null) {
+            return Duration.ZERO;
+        }
+        return Duration.between(startDate, endDate != null ? endDate : Instant.now());
+    }
+
+    private void signalIfNoPending(long pending) {
+        if (pending == 0) {
+            synchronized (pendingLock) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+}
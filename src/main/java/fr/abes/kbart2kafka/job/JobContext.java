@@ -0,0 +1,78 @@
+package fr.abes.kbart2kafka.job;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import fr.abes.kbart2kafka.partition.PartitionStrategy;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializer;
+import fr.abes.kbart2kafka.utils.SerialExecutor;
+import lombok.Getter;
+import org.apache.logging.log4j.ThreadContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+/**
+ * État de l'envoi d'un fichier dans kafka, propre à chaque traitement : plusieurs fichiers peuvent être envoyés
+ * simultanément par les mêmes threads sans partager de compteur, de position de partitionnement ni de contexte de log.
+ * Les envois d'une même partition sont confiés au producteur un à un, dans l'ordre du fichier.
+ */
+@Getter
+public class JobContext {
+    private final Job job;
+    private final String fileName;
+    private final String topic;
+    private final String packageKey;
+    private final LigneKbartSerializer serializer;
+    private final byte[] contentType;
+    private final PartitionStrategy partitionStrategy;
+    private final int nbPartitions;
+    private final Executor[] lanes;
+
+    public JobContext(Job job, String fileName, String topic, String packageKey, LigneKbartSerializer serializer,
+                      PartitionStrategy partitionStrategy, int nbPartitions, Executor workerPool) {
+        this.job = job;
+        this.fileName = fileName;
+        this.topic = topic;
+        this.packageKey = packageKey;
+        this.serializer = serializer;
+        this.contentType = serializer.getContentType().getBytes(StandardCharsets.UTF_8);
+        this.partitionStrategy = partitionStrategy;
+        this.nbPartitions = nbPartitions;
+        this.lanes = new Executor[nbPartitions];
+        for (int i = 0; i < nbPartitions; i++) {
+            lanes[i] = new SerialExecutor(workerPool);
+        }
+    }
+
+    public int partition(LigneKbartDto ligne) {
+        return partitionStrategy.partition(packageKey, ligne, nbPartitions);
+    }
+
+    /**
+     * @return l'exécuteur des envois de la partition : les threads partagés, une ligne de la partition à la fois
+     */
+    public Executor lane(int partition) {
+        return lanes[partition];
+    }
+
+    /**
+     * Contexte de log du thread courant pour une ligne en erreur du fichier.
+     * N'est posé que sur le chemin d'erreur : le contexte d'un traitement est posé une fois pour le fichier.
+     */
+    public void logContext(int ligne) {
+        ThreadContext.put("package", fileName + ";" + ligne);
+    }
+
+    /**
+     * Contexte de log du thread courant pour le fichier
+     */
+    public void logContext() {
+        ThreadContext.put("package", fileName);
+    }
+
+    /**
+     * Retire le contexte de log d'un thread partagé entre plusieurs traitements
+     */
+    public static void clearLogContext() {
+        ThreadContext.remove("package");
+    }
+}
@@ -0,0 +1,195 @@
+package fr.abes.kbart2kafka.job;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rapport de contrôle d'un fichier kbart : les erreurs sont regroupées par règle et par colonne, avec les plages de
+ * lignes concernées et quelques exemples de valeurs incorrectes.
+ * Le nombre de plages et d'exemples conservés est plafonné par règle : la taille du rapport ne dépend pas du nombre
+ * d'erreurs du fichier, tout comme celui des premières erreurs conservées dans l'ordre du fichier.
+ * Le rapport est construit par le thread qui lit le fichier, les lignes dans l'ordre croissant. Un fichier contrôlé
+ * par portions en parallèle a un rapport par portion, réunis ensuite dans l'ordre du fichier par {@link #append}.
+ */
+@Getter
+public class ValidationReport {
+    private final String fileName;
+    private final int maxRanges;
+    private final int maxSamples;
+    private final int maxErrors;
+    private long errors;
+    private long lineErrors;
+    @Getter(AccessLevel.NONE)
+    private int lastLineOnError;
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<LineError> firstErrors = new ArrayList<>();
+
+    public ValidationReport(String fileName, int maxRanges, int maxSamples, int maxErrors) {
+        this.fileName = fileName;
+        this.maxRanges = maxRanges;
+        this.maxSamples = maxSamples;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Ajoute une erreur au rapport
+     *
+     * @param exception type de l'erreur (IllegalDateException, IllegalFileFormatException...)
+     * @param rule      message de la règle non respectée
+     * @param column    nom de la colonne en erreur, null si l'erreur porte sur toute la ligne
+     * @param line      numéro de la ligne dans le fichier
+     * @param value     valeur incorrecte, null si elle n'a pas de sens pour la règle
+     */
+    public void add(String exception, String rule, String column, int line, String value) {
+        errors++;
+        if (line != lastLineOnError) {
+            lineErrors++;
+            lastLineOnError = line;
+        }
+        entries.computeIfAbsent(rule + "\t" + column, k -> new Entry(exception, rule, column)).add(line, value, maxRanges, maxSamples);
+        if (firstErrors.size() < maxErrors) {
+            firstErrors.add(new LineError(line, rule, column, value));
+        }
+    }
+
+    /**
+     * Ajoute à la fin du rapport celui de la portion suivante du fichier
+     *
+     * @param other      rapport de la portion, numéros de ligne relatifs au début de la portion
+     * @param lineOffset nombre de lignes du fichier avant la portion
+     */
+    public void append(ValidationReport other, int lineOffset) {
+        errors += other.errors;
+        lineErrors += other.lineErrors;
+        for (Entry entry : other.entries.values()) {
+            entries.computeIfAbsent(entry.rule + "\t" + entry.column, k -> new Entry(entry.exception, entry.rule, entry.column))
+                    .append(entry, lineOffset, maxRanges, maxSamples);
+        }
+        for (LineError error : other.firstErrors) {
+            if (firstErrors.size() >= maxErrors) {
+                break;
+            }
+            firstErrors.add(new LineError(error.getLine() + lineOffset, error.getRule(), error.getColumn(), error.getValue()));
+        }
+    }
+
+    public boolean hasErrors() {
+        return errors > 0;
+    }
+
+    public List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    @Getter
+    public static class Entry {
+        private final String exception;
+        private final String rule;
+        private final String column;
+        private long count;
+        @Getter(AccessLevel.NONE)
+        private final List<int[]> lineRanges = new ArrayList<>();
+        private final List<Sample> samples = new ArrayList<>();
+        /**
+         * certaines lignes en erreur ne figurent pas dans les plages, le nombre de plages étant plafonné
+         */
+        private boolean truncated;
+
+        Entry(String exception, String rule, String column) {
+            this.exception = exception;
+            this.rule = rule;
+            this.column = column;
+        }
+
+        private void add(int line, String value, int maxRanges, int maxSamples) {
+            count++;
+            addRange(line, line, maxRanges);
+            if (value != null && samples.size() < maxSamples) {
+                samples.add(new Sample(line, value));
+            }
+        }
+
+        private void append(Entry other, int lineOffset, int maxRanges, int maxSamples) {
+            count += other.count;
+            for (int[] range : other.lineRanges) {
+                addRange(range[0] + lineOffset, range[1] + lineOffset, maxRanges);
+            }
+            // les plages suivantes ne seraient plus les premières du fichier
+            truncated |= other.truncated;
+            for (Sample sample : other.samples) {
+                if (samples.size() >= maxSamples) {
+                    break;
+                }
+                samples.add(new Sample(sample.getLine() + lineOffset, sample.getValue()));
+            }
+        }
+
+        private void addRange(int first, int last, int maxRanges) {
+            if (truncated) {
+                return;
+            }
+            int[] previous = lineRanges.isEmpty() ? null : lineRanges.get(lineRanges.size() - 1);
+            if (previous != null && first <= previous[1] + 1) {
+                previous[1] = Math.max(previous[1], last);
+            } else if (lineRanges.size() < maxRanges) {
+                lineRanges.add(new int[]{first, last});
+            } else {
+                truncated = true;
+            }
+        }
+
+        /**
+         * @return les plages de lignes en erreur, au format "12" ou "12-40"
+         */
+        public List<String> getLines() {
+            List<String> lines = new ArrayList<>(lineRanges.size());
+            for (int[] range : lineRanges) {
+                lines.add(range[0] == range[1] ? String.valueOf(range[0]) : range[0] + "-" + range[1]);
+            }
+            return lines;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(rule);
+            if (column != null) {
+                sb.append(" (colonne ").append(column).append(')');
+            }
+            sb.append(" : ").append(count).append(count > 1 ? " lignes " : " ligne ").append(String.join(", ", getLines()));
+            if (truncated) {
+                sb.append(", ...");
+            }
+            if (!samples.isEmpty()) {
+                sb.append(" ; exemples : ");
+                for (int i = 0; i < samples.size(); i++) {
+                    Sample sample = samples.get(i);
+                    sb.append(i == 0 ? "" : ", ").append("ligne ").append(sample.getLine()).append(" '").append(sample.getValue()).append('\'');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Sample {
+        private final int line;
+        private final String value;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LineError {
+        private final int line;
+        private final String rule;
+        private final String column;
+        private final String value;
+    }
+}
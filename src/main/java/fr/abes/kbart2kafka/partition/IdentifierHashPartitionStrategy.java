@@ -0,0 +1,24 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+/**
+ * Les lignes d'un même identifiant (online_identifier, à défaut print_identifier, à défaut publication_title)
+ * sont envoyées dans la même partition, quel que soit le fichier
+ */
+public class IdentifierHashPartitionStrategy implements PartitionStrategy {
+    @Override
+    public int partition(String packageKey, LigneKbartDto ligne, int nbPartitions) {
+        return PartitionStrategy.hash(identifier(ligne), nbPartitions);
+    }
+
+    private static String identifier(LigneKbartDto ligne) {
+        if (ligne.getOnline_identifier() != null && !ligne.getOnline_identifier().isEmpty()) {
+            return ligne.getOnline_identifier();
+        }
+        if (ligne.getPrint_identifier() != null && !ligne.getPrint_identifier().isEmpty()) {
+            return ligne.getPrint_identifier();
+        }
+        return ligne.getPublication_title();
+    }
+}
@@ -0,0 +1,13 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+/**
+ * Toutes les lignes d'un même provider et package sont envoyées dans la même partition, dans l'ordre du fichier
+ */
+public class PackageHashPartitionStrategy implements PartitionStrategy {
+    @Override
+    public int partition(String packageKey, LigneKbartDto ligne, int nbPartitions) {
+        return PartitionStrategy.hash(packageKey, nbPartitions);
+    }
+}
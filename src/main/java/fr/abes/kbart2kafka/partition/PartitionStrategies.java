@@ -0,0 +1,44 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.utils.PARTITIONING_STRATEGY;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Choix de la stratégie de partitionnement par topic : propriété {@code abes.kafka.partitioning.<topic>},
+ * à défaut {@code abes.kafka.partitioning.default} (round_robin).
+ * Chaque appel à {@link #forTopic(String)} crée une nouvelle stratégie : la position des stratégies round_robin et
+ * sticky est propre à chaque fichier envoyé.
+ */
+@Component
+public class PartitionStrategies {
+    private static final String PROPERTY_PREFIX = "abes.kafka.partitioning.";
+
+    private final Environment environment;
+    private final Map<PARTITIONING_STRATEGY, Supplier<PartitionStrategy>> strategies = new EnumMap<>(PARTITIONING_STRATEGY.class);
+
+    public PartitionStrategies(Environment environment) {
+        this.environment = environment;
+        int stickyBatchSize = environment.getProperty(PROPERTY_PREFIX + "stickyBatchSize", Integer.class, 1000);
+        PartitionStrategy packageHash = new PackageHashPartitionStrategy();
+        PartitionStrategy identifierHash = new IdentifierHashPartitionStrategy();
+        strategies.put(PARTITIONING_STRATEGY.round_robin, RoundRobinPartitionStrategy::new);
+        strategies.put(PARTITIONING_STRATEGY.package_hash, () -> packageHash);
+        strategies.put(PARTITIONING_STRATEGY.identifier_hash, () -> identifierHash);
+        strategies.put(PARTITIONING_STRATEGY.sticky, () -> new StickyPartitionStrategy(stickyBatchSize));
+    }
+
+    public PartitionStrategy forTopic(String topic) {
+        String defaultStrategy = environment.getProperty(PROPERTY_PREFIX + "default", PARTITIONING_STRATEGY.round_robin.name());
+        String strategy = environment.getProperty(PROPERTY_PREFIX + topic, defaultStrategy);
+        try {
+            return strategies.get(PARTITIONING_STRATEGY.valueOf(strategy)).get();
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Stratégie de partitionnement " + strategy + " inconnue pour le topic " + topic);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import org.apache.kafka.common.utils.Utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Choix de la partition kafka d'une ligne kbart
+ */
+public interface PartitionStrategy {
+    /**
+     * @param packageKey   provider et package du fichier en cours de chargement
+     * @param ligne        ligne à envoyer
+     * @param nbPartitions nombre de partitions du topic
+     * @return partition dans laquelle envoyer la ligne, entre 0 et nbPartitions - 1
+     */
+    int partition(String packageKey, LigneKbartDto ligne, int nbPartitions);
+
+    /**
+     * Même répartition que le partitionneur par défaut de kafka pour une clé donnée
+     */
+    static int hash(String key, int nbPartitions) {
+        return Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % nbPartitions;
+    }
+}
@@ -0,0 +1,17 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Les lignes sont réparties tour à tour sur chacune des partitions
+ */
+public class RoundRobinPartitionStrategy implements PartitionStrategy {
+    private final AtomicInteger lastPartitionUsed = new AtomicInteger(0);
+
+    @Override
+    public int partition(String packageKey, LigneKbartDto ligne, int nbPartitions) {
+        return Math.floorMod(lastPartitionUsed.getAndIncrement(), nbPartitions);
+    }
+}
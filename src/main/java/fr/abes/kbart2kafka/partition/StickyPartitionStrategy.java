@@ -0,0 +1,23 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Les lignes sont envoyées par lots de batchSize lignes consécutives dans une même partition, puis dans la suivante,
+ * ce qui remplit mieux les lots du producteur qu'une répartition ligne à ligne
+ */
+public class StickyPartitionStrategy implements PartitionStrategy {
+    private final int batchSize;
+    private final AtomicLong lineCounter = new AtomicLong(0);
+
+    public StickyPartitionStrategy(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public int partition(String packageKey, LigneKbartDto ligne, int nbPartitions) {
+        return (int) Math.floorMod(lineCounter.getAndIncrement() / batchSize, (long) nbPartitions);
+    }
+}
@@ -2,12 +2,35 @@ package fr.abes.kbart2kafka.repository;
 
 import fr.abes.kbart2kafka.entity.ProviderPackage;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ProviderPackageRepository extends JpaRepository<ProviderPackage, Integer> {
-    List<ProviderPackage> findByPackageNameAndProviderIdtProvider(String packageName, Integer providerIdtProvider);
+    /**
+     * Date du package le plus récent d'un provider, en une seule requête
+     */
+    @Query("select max(pp.dateP) from ProviderPackage pp, Provider p where pp.providerIdtProvider = p.idtProvider and p.provider = :provider and pp.packageName = :packageName")
+    Optional<Date> findLatestDateP(@Param("provider") String provider, @Param("packageName") String packageName);
 
+    /**
+     * Date du package le plus récent pour chaque couple provider / package parmi les providers et packages demandés
+     */
+    @Query("select p.provider as provider, pp.packageName as packageName, max(pp.dateP) as dateP from ProviderPackage pp, Provider p " +
+            "where pp.providerIdtProvider = p.idtProvider and p.provider in :providers and pp.packageName in :packageNames group by p.provider, pp.packageName")
+    List<LatestPackageDate> findLatestDateP(@Param("providers") Collection<String> providers, @Param("packageNames") Collection<String> packageNames);
+
+    interface LatestPackageDate {
+        String getProvider();
+
+        String getPackageName();
+
+        Date getDateP();
+    }
 }
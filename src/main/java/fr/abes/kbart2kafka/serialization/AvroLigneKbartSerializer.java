@@ -0,0 +1,125 @@
+package fr.abes.kbart2kafka.serialization;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Sérialisation binaire Avro au format "single object encoding" : chaque message commence par l'empreinte
+ * CRC-64-AVRO du schéma {@code avro/LigneKbartDto.avsc}, ce qui permet au consommateur de retrouver le schéma
+ * sans registre de schémas. Les champs sont écrits directement depuis la dto, sans passer par un GenericRecord.
+ */
+public class AvroLigneKbartSerializer implements LigneKbartSerializer {
+    public static final String SCHEMA_RESOURCE = "/avro/LigneKbartDto.avsc";
+    private static final byte[] SINGLE_OBJECT_MAGIC = {(byte) 0xC3, (byte) 0x01};
+
+    private static final Map<String, Function<LigneKbartDto, String>> GETTERS = new HashMap<>();
+
+    static {
+        GETTERS.put("publication_title", LigneKbartDto::getPublication_title);
+        GETTERS.put("print_identifier", LigneKbartDto::getPrint_identifier);
+        GETTERS.put("online_identifier", LigneKbartDto::getOnline_identifier);
+        GETTERS.put("date_first_issue_online", LigneKbartDto::getDate_first_issue_online);
+        GETTERS.put("num_first_vol_online", LigneKbartDto::getNum_first_vol_online);
+        GETTERS.put("num_first_issue_online", LigneKbartDto::getNum_first_issue_online);
+        GETTERS.put("date_last_issue_online", LigneKbartDto::getDate_last_issue_online);
+        GETTERS.put("num_last_vol_online", LigneKbartDto::getNum_last_vol_online);
+        GETTERS.put("num_last_issue_online", LigneKbartDto::getNum_last_issue_online);
+        GETTERS.put("title_url", LigneKbartDto::getTitle_url);
+        GETTERS.put("first_author", LigneKbartDto::getFirst_author);
+        GETTERS.put("title_id", LigneKbartDto::getTitle_id);
+        GETTERS.put("embargo_info", LigneKbartDto::getEmbargo_info);
+        GETTERS.put("coverage_depth", LigneKbartDto::getCoverage_depth);
+        GETTERS.put("notes", LigneKbartDto::getNotes);
+        GETTERS.put("publisher_name", LigneKbartDto::getPublisher_name);
+        GETTERS.put("publication_type", LigneKbartDto::getPublication_type);
+        GETTERS.put("date_monograph_published_print", LigneKbartDto::getDate_monograph_published_print);
+        GETTERS.put("date_monograph_published_online", LigneKbartDto::getDate_monograph_published_online);
+        GETTERS.put("monograph_volume", LigneKbartDto::getMonograph_volume);
+        GETTERS.put("monograph_edition", LigneKbartDto::getMonograph_edition);
+        GETTERS.put("first_editor", LigneKbartDto::getFirst_editor);
+        GETTERS.put("parent_publication_title_id", LigneKbartDto::getParent_publication_title_id);
+        GETTERS.put("preceding_publication_title_id", LigneKbartDto::getPreceding_publication_title_id);
+        GETTERS.put("access_type", LigneKbartDto::getAccess_type);
+        GETTERS.put("bestPpn", LigneKbartDto::getBestPpn);
+    }
+
+    private final Schema schema;
+    private final byte[] header;
+    // accesseurs des colonnes dans l'ordre du schéma, les deux premiers champs sont les compteurs de lignes
+    private final Function<LigneKbartDto, String>[] stringFields;
+    private final ThreadLocal<BinaryEncoder> encoders = new ThreadLocal<>();
+
+    @SuppressWarnings("unchecked")
+    public AvroLigneKbartSerializer() {
+        this.schema = loadSchema();
+        long fingerprint = SchemaNormalization.parsingFingerprint64(schema);
+        this.header = new byte[10];
+        System.arraycopy(SINGLE_OBJECT_MAGIC, 0, header, 0, 2);
+        for (int i = 0; i < 8; i++) {
+            header[2 + i] = (byte) (fingerprint >>> (8 * i));
+        }
+        List<Schema.Field> fields = schema.getFields();
+        this.stringFields = new Function[fields.size() - 2];
+        for (int i = 2; i < fields.size(); i++) {
+            Function<LigneKbartDto, String> getter = GETTERS.get(fields.get(i).name());
+            if (getter == null) {
+                throw new IllegalStateException("Champ " + fields.get(i).name() + " du schéma avro inconnu de LigneKbartDto");
+            }
+            stringFields[i - 2] = getter;
+        }
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public String getContentType() {
+        return "avro/binary";
+    }
+
+    @Override
+    public byte[] serialize(LigneKbartDto ligne) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        out.write(header);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, encoders.get());
+        encoders.set(encoder);
+        encoder.writeInt(ligne.getNbCurrentLines());
+        encoder.writeInt(ligne.getNbLinesTotal());
+        for (Function<LigneKbartDto, String> field : stringFields) {
+            String value = field.apply(ligne);
+            if (value == null) {
+                encoder.writeIndex(0);
+                encoder.writeNull();
+            } else {
+                encoder.writeIndex(1);
+                encoder.writeString(value);
+            }
+        }
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    private static Schema loadSchema() {
+        try (InputStream in = AvroLigneKbartSerializer.class.getResourceAsStream(SCHEMA_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Schéma avro " + SCHEMA_RESOURCE + " introuvable");
+            }
+            return new Schema.Parser().parse(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package fr.abes.kbart2kafka.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+import java.io.IOException;
+
+/**
+ * Sérialisation JSON, format historique des messages
+ */
+public class JsonLigneKbartSerializer implements LigneKbartSerializer {
+    private final ObjectMapper mapper;
+
+    public JsonLigneKbartSerializer(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String getContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public byte[] serialize(LigneKbartDto ligne) throws IOException {
+        return mapper.writeValueAsBytes(ligne);
+    }
+}
@@ -0,0 +1,17 @@
+package fr.abes.kbart2kafka.serialization;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+
+import java.io.IOException;
+
+/**
+ * Format de sérialisation des lignes kbart envoyées dans kafka
+ */
+public interface LigneKbartSerializer {
+    /**
+     * Valeur du header {@code content-type} des messages kafka
+     */
+    String getContentType();
+
+    byte[] serialize(LigneKbartDto ligne) throws IOException;
+}
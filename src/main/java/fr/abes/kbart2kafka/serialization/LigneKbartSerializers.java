@@ -0,0 +1,37 @@
+package fr.abes.kbart2kafka.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.utils.SERIALIZATION_FORMAT;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Choix du format de sérialisation par topic : propriété {@code abes.kafka.serialization.<topic>},
+ * à défaut {@code abes.kafka.serialization.default} (json)
+ */
+@Component
+public class LigneKbartSerializers {
+    private static final String PROPERTY_PREFIX = "abes.kafka.serialization.";
+
+    private final Environment environment;
+    private final Map<SERIALIZATION_FORMAT, LigneKbartSerializer> serializers = new EnumMap<>(SERIALIZATION_FORMAT.class);
+
+    public LigneKbartSerializers(Environment environment, ObjectMapper mapper) {
+        this.environment = environment;
+        serializers.put(SERIALIZATION_FORMAT.json, new JsonLigneKbartSerializer(mapper));
+        serializers.put(SERIALIZATION_FORMAT.avro, new AvroLigneKbartSerializer());
+    }
+
+    public LigneKbartSerializer forTopic(String topic) {
+        String defaultFormat = environment.getProperty(PROPERTY_PREFIX + "default", SERIALIZATION_FORMAT.json.name());
+        String format = environment.getProperty(PROPERTY_PREFIX + topic, defaultFormat);
+        try {
+            return serializers.get(SERIALIZATION_FORMAT.valueOf(format));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Format de sérialisation " + format + " inconnu pour le topic " + topic);
+        }
+    }
+}
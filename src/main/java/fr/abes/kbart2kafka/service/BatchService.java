@@ -0,0 +1,125 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.utils.KbartFiles;
+import fr.abes.kbart2kafka.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Chargement d'un lot de fichiers kbart du répertoire des fichiers kbart.
+ * Les fichiers d'un même provider et package sont chargés l'un après l'autre, du plus ancien au plus récent
+ * selon la date de leur nom, afin que le contrôle d'un package plus récent en base reste valable.
+ * Les différents packages sont chargés en parallèle, dans la limite de abes.batch.maxParallelFiles fichiers simultanés.
+ */
+@Service
+@Slf4j
+public class BatchService {
+    private final JobService jobService;
+    private final ProviderPackageService providerPackageService;
+    private final String pathToKbart;
+    private final int maxParallelFiles;
+
+    public BatchService(JobService jobService, ProviderPackageService providerPackageService,
+                        @Value("${abes.pathToKbart}") String pathToKbart,
+                        @Value("${abes.batch.maxParallelFiles:4}") int maxParallelFiles) {
+        this.jobService = jobService;
+        this.providerPackageService = providerPackageService;
+        this.pathToKbart = pathToKbart;
+        this.maxParallelFiles = maxParallelFiles;
+    }
+
+    /**
+     * Planifie le chargement des fichiers correspondant à un répertoire ou à un motif
+     *
+     * @param pattern sous-répertoire (tous ses fichiers kbart, compressés ou non) ou motif glob (ex : {@code BRILL_*.tsv}),
+     *                relatif au répertoire des fichiers kbart
+     * @return les traitements créés, vide si aucun fichier ne correspond
+     * @throws IOException impossible de parcourir le répertoire des fichiers kbart
+     */
+    public List<Job> submit(String pattern) throws IOException {
+        List<String> fileNames = listFiles(pattern);
+        log.info("Chargement de {} fichiers correspondant à {}", fileNames.size(), pattern);
+        return submitFiles(fileNames);
+    }
+
+    /**
+     * Planifie le chargement d'une liste de fichiers, ordonnés et répartis comme décrit par {@link #plan(List)}
+     *
+     * @param fileNames chemins relatifs au répertoire des fichiers kbart
+     * @return les traitements créés
+     */
+    public List<Job> submitFiles(List<String> fileNames) {
+        // une seule requête pour tout le lot : les fichiers d'un package plus ancien que celui de la base sont refusés
+        // sans être planifiés, le contrôle des autres fichiers utilisera le cache
+        List<String> names = fileNames.stream().map(fileName -> Paths.get(fileName).getFileName().toString()).toList();
+        Map<String, Boolean> moreRecent = providerPackageService.hasMoreRecentPackageInBdd(names);
+        List<Job> jobs = new ArrayList<>();
+        List<String> toLoad = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (Boolean.TRUE.equals(moreRecent.get(Paths.get(fileName).getFileName().toString()))) {
+                jobs.add(jobService.refuse(fileName, JobService.MORE_RECENT_PACKAGE));
+            } else {
+                toLoad.add(fileName);
+            }
+        }
+        for (List<String> lane : plan(toLoad)) {
+            jobs.addAll(jobService.submitSequence(lane));
+        }
+        return jobs;
+    }
+
+    /**
+     * @return les chemins, relatifs au répertoire des fichiers kbart, des fichiers correspondant au motif
+     */
+    List<String> listFiles(String pattern) throws IOException {
+        return KbartFiles.list(Paths.get(pathToKbart).toAbsolutePath().normalize(), pattern);
+    }
+
+    /**
+     * Répartit les fichiers en au plus maxParallelFiles séquences chargées en parallèle.
+     * Tous les fichiers d'un même provider et package sont dans la même séquence, triés par date.
+     */
+    List<List<String>> plan(List<String> fileNames) {
+        Map<String, List<String>> groups = new TreeMap<>();
+        for (String fileName : fileNames) {
+            groups.computeIfAbsent(packageKey(fileName), k -> new ArrayList<>()).add(fileName);
+        }
+        List<List<String>> sortedGroups = new ArrayList<>(groups.values());
+        sortedGroups.forEach(group -> group.sort(Comparator.comparing(BatchService::dateFilename).thenComparing(Comparator.naturalOrder())));
+        // les plus gros groupes d'abord, chacun dans la séquence la moins chargée
+        sortedGroups.sort(Comparator.comparingInt(List<String>::size).reversed());
+        int nbLanes = Math.min(Math.max(1, maxParallelFiles), sortedGroups.size());
+        List<List<String>> lanes = new ArrayList<>();
+        for (int i = 0; i < nbLanes; i++) {
+            lanes.add(new ArrayList<>());
+        }
+        for (List<String> group : sortedGroups) {
+            lanes.stream().min(Comparator.comparingInt(List::size)).orElseThrow().addAll(group);
+        }
+        return lanes;
+    }
+
+    private static String packageKey(String fileName) {
+        // un nom incorrect sera refusé par le contrôle du fichier : le fichier est chargé seul
+        return Utils.extractPackageKey(Paths.get(fileName).getFileName().toString());
+    }
+
+    private static Date dateFilename(String fileName) {
+        try {
+            return Utils.extractDateFilename(Paths.get(fileName).getFileName().toString());
+        } catch (Exception e) {
+            return new Date(0);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.delta.DeltaPlan;
+import fr.abes.kbart2kafka.delta.FingerprintIndex;
+import fr.abes.kbart2kafka.utils.KbartColumns;
+import fr.abes.kbart2kafka.utils.KbartTokenizer;
+import fr.abes.kbart2kafka.utils.Utils;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Chargement incrémental (abes.delta.enabled=true) : seules les lignes ajoutées ou modifiées depuis le dernier
+ * fichier chargé du même package sont envoyées, ainsi qu'un message de suppression pour chaque ligne disparue.
+ * Les empreintes du dernier fichier chargé de chaque package sont conservées dans abes.delta.indexPath.
+ * Le calcul des différences, l'envoi et l'enregistrement des empreintes d'un package se font sous le verrou du package
+ * ({@link #packageLock(String)}) : deux fichiers d'un même package chargés simultanément ne peuvent pas être comparés
+ * aux mêmes empreintes.
+ */
+@Service
+@Slf4j
+public class DeltaService {
+    // verrous répartis par package : deux packages différents partagent rarement un verrou
+    private static final int NB_LOCKS = 64;
+
+    @Getter
+    private final boolean enabled;
+    private final Path indexPath;
+    private final Lock[] locks;
+
+    public DeltaService(@Value("${abes.delta.enabled:false}") boolean enabled,
+                        @Value("${abes.delta.indexPath:${abes.pathToKbart}.index/}") String indexPath) {
+        this.enabled = enabled;
+        this.indexPath = Paths.get(indexPath);
+        this.locks = new Lock[NB_LOCKS];
+        for (int i = 0; i < NB_LOCKS; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param fileName nom d'un fichier kbart
+     * @return le verrou des empreintes du package du fichier, à détenir du calcul des différences à l'enregistrement
+     * des nouvelles empreintes
+     */
+    public Lock packageLock(String fileName) {
+        return locks[Math.floorMod(Utils.extractPackageKey(fileName).hashCode(), NB_LOCKS)];
+    }
+
+    /**
+     * Comparaison du fichier avec les empreintes du dernier fichier chargé du même package.
+     * Un fichier _FORCE ou le premier fichier d'un package est envoyé en entier.
+     *
+     * @param fichier fichier dont toutes les lignes ont été contrôlées
+     * @return les lignes à envoyer et les nouvelles empreintes du package
+     * @throws IOException impossible de lire le fichier ou l'index
+     */
+    public DeltaPlan computeDelta(File fichier) throws IOException {
+        Path path = indexFile(fichier);
+        FingerprintIndex previous = null;
+        if (!fichier.getName().contains("_FORCE") && Files.exists(path)) {
+            previous = FingerprintIndex.read(path);
+        }
+        FingerprintIndex index = new FingerprintIndex();
+        BitSet added = new BitSet();
+        BitSet updated = new BitSet();
+        // numéro de la première ligne de chaque clé
+        Map<String, Integer> firstLines = new HashMap<>();
+        try (KbartTokenizer ligneKbart = KbartTokenizer.open(fichier)) {
+            KbartColumns columns = KbartColumns.compile(ligneKbart.nextLine() ? ligneKbart.line() : "");
+            while (ligneKbart.nextLine()) {
+                if (ligneKbart.isBlank()) {
+                    continue;
+                }
+                String[] fields = columns.fields(ligneKbart);
+                String key = FingerprintIndex.key(fields);
+                long fingerprint = FingerprintIndex.fingerprint(fields);
+                int lineNumber = ligneKbart.getLineNumber();
+                Integer firstLine = firstLines.putIfAbsent(key, lineNumber);
+                if (firstLine != null) {
+                    // l'empreinte d'une clé présente plusieurs fois couvre toutes ses occurrences
+                    index.put(key, FingerprintIndex.combine(index.get(key), fingerprint));
+                } else {
+                    index.put(key, fingerprint);
+                }
+                if (previous == null) {
+                    continue;
+                }
+                Long previousFingerprint = previous.get(key);
+                BitSet lines = (previousFingerprint == null) ? added : updated;
+                if (firstLine != null) {
+                    // une clé présente plusieurs fois dans le fichier est ambiguë : toutes ses occurrences sont envoyées,
+                    // y compris la première, même inchangée
+                    lines.set(firstLine);
+                    lines.set(lineNumber);
+                } else if (previousFingerprint == null || previousFingerprint != fingerprint) {
+                    lines.set(lineNumber);
+                }
+            }
+        }
+        List<String> deletedKeys = new ArrayList<>();
+        if (previous != null) {
+            for (String key : previous.keys()) {
+                if (index.get(key) == null) {
+                    deletedKeys.add(key);
+                }
+            }
+            log.info("Chargement incrémental : {} lignes ajoutées, {} lignes modifiées, {} lignes supprimées",
+                    added.cardinality(), updated.cardinality(), deletedKeys.size());
+        }
+        return new DeltaPlan(previous == null, added, updated, deletedKeys, index);
+    }
+
+    /**
+     * Enregistrement des empreintes du fichier chargé, référence du prochain chargement du package
+     */
+    public void saveIndex(File fichier, DeltaPlan plan) throws IOException {
+        plan.getIndex().write(indexFile(fichier));
+    }
+
+    /**
+     * Suppression des empreintes d'un package dont un fichier a été chargé sans calcul d'empreintes :
+     * le prochain fichier du package sera envoyé en entier
+     */
+    public void invalidateIndex(String fileName) throws IOException {
+        if (Files.deleteIfExists(indexFile(new File(fileName)))) {
+            log.info("Empreintes du package {} supprimées", Utils.extractPackageKey(fileName));
+        }
+    }
+
+    private Path indexFile(File fichier) {
+        return indexPath.resolve(Utils.extractPackageKey(fichier.getName()) + ".idx");
+    }
+}
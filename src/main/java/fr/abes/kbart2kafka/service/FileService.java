@@ -1,34 +1,60 @@
 package fr.abes.kbart2kafka.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.delta.DeltaPlan;
+import fr.abes.kbart2kafka.delta.FingerprintIndex;
 import fr.abes.kbart2kafka.dto.LigneKbartDto;
 import fr.abes.kbart2kafka.exception.IllegalDateException;
 import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.job.JobContext;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.partition.PartitionStrategies;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializers;
 import fr.abes.kbart2kafka.utils.CheckFiles;
+import fr.abes.kbart2kafka.utils.DATE_FORMAT;
+import fr.abes.kbart2kafka.utils.KBART_COLUMN;
+import fr.abes.kbart2kafka.utils.KbartColumns;
+import fr.abes.kbart2kafka.utils.KbartDateNormalizer;
+import fr.abes.kbart2kafka.utils.KbartFiles;
+import fr.abes.kbart2kafka.utils.KbartTokenizer;
+import fr.abes.kbart2kafka.utils.OPERATION_TYPE;
 import fr.abes.kbart2kafka.utils.PUBLICATION_TYPE;
+import fr.abes.kbart2kafka.utils.Utf8Validator;
 import fr.abes.kbart2kafka.utils.Utils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.logging.log4j.ThreadContext;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 @Service
 @Slf4j
 public class FileService {
+    private static final String CONTENT_TYPE_HEADER = "content-type";
+    private static final String OPERATION_HEADER = "kbart-operation";
+    private static final byte[] MONOGRAPH = PUBLICATION_TYPE.monograph.name().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SERIAL = PUBLICATION_TYPE.serial.name().getBytes(StandardCharsets.UTF_8);
+    private static final String MESSAGE_UTF8 = "le fichier contient des caracters qui ne sont pas en UTF8";
 
     @Value("${topic.name.target.kbart}")
     private String topicKbart;
@@ -36,87 +62,617 @@ public class FileService {
 
     @Value("${abes.kafka.concurrency.nbThread}")
     private int nbThread;
-    private final AtomicInteger lastThreadUsed;
-    private final KafkaTemplate<String, String> kafkaTemplate;
 
-    private final ObjectMapper mapper;
-    ExecutorService executor;
+    @Value("${abes.kafka.concurrency.queueCapacity:1000}")
+    private int queueCapacity;
 
-    public FileService(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper mapper) {
+    @Value("${abes.kafka.concurrency.virtualThreads:${spring.threads.virtual.enabled:false}}")
+    private boolean virtualThreads;
+
+    @Value("${abes.kafka.transaction.enabled:false}")
+    private boolean transactional;
+
+    @Value("${abes.kafka.transaction.batchSize:0}")
+    private int transactionBatchSize;
+
+    @Value("${abes.validation.report.maxRanges:20}")
+    private int reportMaxRanges;
+
+    @Value("${abes.validation.report.maxSamples:5}")
+    private int reportMaxSamples;
+
+    @Value("${abes.validation.report.maxErrors:20}")
+    private int reportMaxErrors;
+
+    @Value("${abes.kafka.inflight.maxRecords:10000}")
+    private int maxInFlightRecords;
+
+    @Value("${abes.kafka.inflight.maxBytes:33554432}")
+    private int maxInFlightBytes;
+
+    @Value("${abes.kafka.inflight.acknowledgementTimeout:300000}")
+    private long acknowledgementTimeout;
+
+    private InFlightLimiter inFlightLimiter;
+
+    private ExecutorService workerPool;
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private final LigneKbartSerializers serializers;
+
+    private final PartitionStrategies partitionStrategies;
+
+    private final DeltaService deltaService;
+
+    private final IngestionMetrics metrics;
+
+    public FileService(KafkaTemplate<String, byte[]> kafkaTemplate, LigneKbartSerializers serializers, PartitionStrategies partitionStrategies,
+                       DeltaService deltaService, IngestionMetrics metrics) {
         this.kafkaTemplate = kafkaTemplate;
-        this.mapper = mapper;
-        this.lastThreadUsed = new AtomicInteger(0);
+        this.serializers = serializers;
+        this.partitionStrategies = partitionStrategies;
+        this.deltaService = deltaService;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    void init() {
+        inFlightLimiter = new InFlightLimiter(maxInFlightRecords, maxInFlightBytes);
+        workerPool = initExecutor();
+    }
+
+    /**
+     * Threads d'envoi partagés par tous les traitements, créés une fois pour toute la durée de vie de l'application.
+     * File d'attente bornée : quand elle est pleine, la lecture du fichier exécute elle-même l'envoi,
+     * ce qui borne la mémoire utilisée quelle que soit la taille du fichier.
+     * Avec abes.kafka.concurrency.virtualThreads=true (Java 21 et plus), chaque envoi est exécuté dans un thread
+     * virtuel : le nombre d'envois simultanés n'est alors borné que par la limite des lignes en attente d'acquittement
+     */
+    ExecutorService initExecutor() {
+        if (virtualThreads) {
+            ExecutorService executor = newVirtualThreadExecutor("kbart-send-");
+            if (executor != null) {
+                log.info("Envoi dans kafka dans des threads virtuels");
+                return executor;
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(nbThread, nbThread, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> new Thread(r, "kbart-send-" + threadNumber.incrementAndGet()),
+                FileService::rejectedSend);
     }
 
-//    @PostConstruct
-    void initExecutor() {
-        executor = Executors.newFixedThreadPool(nbThread);
+    /**
+     * File pleine : l'envoi est exécuté par la lecture du fichier. Après l'arrêt des threads d'envoi, il est refusé :
+     * la ligne est alors comptée en erreur par {@link #send} au lieu d'être attendue indéfiniment.
+     */
+    private static void rejectedSend(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Arrêt des threads d'envoi dans kafka");
+        }
+        task.run();
     }
 
+    /**
+     * Les threads virtuels n'existent qu'à partir de Java 21 alors que l'application est compilée pour Java 17 :
+     * l'exécuteur est obtenu par réflexion
+     *
+     * @return null si la JVM ne propose pas les threads virtuels
+     */
+    private static ExecutorService newVirtualThreadExecutor(String prefix) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Threads virtuels indisponibles sur Java {}, utilisation du pool de threads (abes.kafka.concurrency.nbThread)", Runtime.version().feature());
+            return null;
+        }
+    }
 
-    public void loadFile(File fichier) throws IllegalFileFormatException, IOException {
-        executeMultiThread(fichier);
+    @PreDestroy
+    void shutdown() {
+        workerPool.shutdown();
     }
 
-    private void executeMultiThread(File fichier) throws IllegalFileFormatException {
-        initExecutor();
-        try (BufferedReader buff = new BufferedReader(new FileReader(fichier))) {
-            List<String> fileContent = buff.lines().toList();
-            List<String> kbartsToSend = new ArrayList<>();
-            Integer nbLignesFichier = fileContent.size() - 1;
-            log.debug("Début d'envoi de " + nbLignesFichier + " lignes du fichier");
-            AtomicInteger cpt = new AtomicInteger(1);
-            AtomicBoolean isOnError = new AtomicBoolean(false);
-            fileContent.stream().skip(1).forEach(ligneKbart -> {
-                cpt.incrementAndGet();
-                ThreadContext.put("package", fichier.getName() + ";" + cpt.get());
-                String[] tsvElementsOnOneLine = ligneKbart.split("\t");
+
+    /**
+     * Chargement d'un fichier kbart : une première lecture en flux contrôle toutes les lignes,
+     * une seconde lecture en flux envoie les lignes dans kafka si aucune erreur n'a été détectée.
+     * Aucune des deux lectures ne conserve le contenu du fichier en mémoire.
+     * La méthode rend la main une fois toutes les lignes acquittées par kafka.
+     * En chargement incrémental, seules les différences avec le dernier fichier chargé du package sont envoyées,
+     * avec l'opération (ADD, UPDATE, DELETE) dans le header kbart-operation.
+     *
+     * @param fichier fichier kbart dont l'entête a été contrôlé par {@link CheckFiles#verifyFile(File, String)}
+     * @param job     suivi du traitement
+     * @throws IllegalFileFormatException au moins une ligne du fichier est incorrecte
+     * @throws IOException                impossible de lire le fichier
+     * @throws KafkaException             au moins une ligne n'a pas pu être envoyée dans kafka
+     */
+    public void loadFile(File fichier, Job job) throws IllegalFileFormatException, IOException, InterruptedException {
+        int nbLignesFichier = verifyLines(fichier, job);
+        if (!deltaService.isEnabled()) {
+            executeMultiThread(fichier, nbLignesFichier, job, null);
+            checkSendErrors(job);
+            return;
+        }
+        Lock packageLock = deltaService.packageLock(fichier.getName());
+        packageLock.lockInterruptibly();
+        try {
+            DeltaPlan delta = deltaService.computeDelta(fichier);
+            executeMultiThread(fichier, nbLignesFichier, job, delta);
+            checkSendErrors(job);
+            deltaService.saveIndex(fichier, delta);
+        } finally {
+            packageLock.unlock();
+        }
+    }
+
+    private static void checkSendErrors(Job job) {
+        if (job.getErrors().get() > 0) {
+            throw new KafkaException(job.getErrors().get() + " lignes n'ont pas pu être envoyées dans kafka");
+        }
+    }
+
+    /**
+     * Contrôle en une seule lecture de toutes les lignes du fichier (hors entête).
+     * Toutes les erreurs sont collectées dans le rapport de contrôle du traitement ({@link Job#getReport()}),
+     * publié en fin de lecture à raison d'un log par règle en erreur et non d'un log par ligne.
+     *
+     * @param fichier fichier en entrée
+     * @return le nombre de lignes de données du fichier
+     * @throws IllegalFileFormatException au moins une ligne du fichier est incorrecte
+     * @throws IOException                impossible de lire le fichier
+     */
+    public int verifyLines(File fichier, Job job) throws IllegalFileFormatException, IOException {
+        String fileName = KbartFiles.tsvName(fichier.getName());
+        ValidationReport report = new ValidationReport(fileName, reportMaxRanges, reportMaxSamples, reportMaxErrors);
+        int nbLignesFichier = 0;
+        // durées cumulées sur le fichier, publiées une seule fois en fin de lecture
+        long startVerification = System.nanoTime();
+        long tabulationDuration = 0;
+        long titleDuration = 0;
+        long utf8Duration = 0;
+        long lineDuration = 0;
+        try (KbartTokenizer ligneKbart = KbartTokenizer.open(fichier)) {
+            // l'entête a déjà été contrôlé
+            KbartColumns columns = KbartColumns.compile(ligneKbart.nextLine() ? ligneKbart.line() : "");
+            boolean blankLineFound = false;
+            while (ligneKbart.nextLine()) {
+                int cpt = ligneKbart.getLineNumber();
+                // seules des lignes vides en fin de fichier sont tolérées
+                if (ligneKbart.isBlank()) {
+                    blankLineFound = true;
+                    continue;
+                }
                 try {
-                    CheckFiles.isValidUtf8(ligneKbart);
-                    kbartsToSend.add(mapper.writeValueAsString(constructDto(tsvElementsOnOneLine, cpt.get(), nbLignesFichier)));
-                } catch (IllegalDateException | IllegalFileFormatException | JsonProcessingException e) {
-                    log.error("Erreur dans le fichier en entrée à la ligne " + cpt.get() + " : " + e.getMessage());
-                    isOnError.set(true);
+                    if (blankLineFound) {
+                        throw new IllegalFileFormatException("Le fichier ne contient pas de tabulation");
+                    }
+                    long start = System.nanoTime();
+                    CheckFiles.detectTabulations(ligneKbart);
+                    long tabulationEnd = System.nanoTime();
+                    tabulationDuration += tabulationEnd - start;
+                    CheckFiles.checkPublicationTitle(ligneKbart, columns);
+                    titleDuration += System.nanoTime() - tabulationEnd;
+                } catch (IllegalFileFormatException e) {
+                    // erreur de structure du fichier : le contrôle des lignes suivantes n'aurait pas de sens
+                    report.add(IllegalFileFormatException.class.getSimpleName(), e.getMessage(), null, cpt, null);
+                    throw e;
+                }
+                nbLignesFichier++;
+                job.lineParsed();
+                long errors = report.getErrors();
+                long start = System.nanoTime();
+                verifyUtf8(ligneKbart, columns, 0, report);
+                long utf8End = System.nanoTime();
+                utf8Duration += utf8End - start;
+                verifyLine(ligneKbart, columns, report);
+                lineDuration += System.nanoTime() - utf8End;
+                if (report.getErrors() > errors) {
+                    job.error();
                 }
-            });
-            if (!isOnError.get()) {
-                cpt.set(1);
-                kbartsToSend.forEach(kbart -> executor.execute(() -> {
-                    cpt.incrementAndGet();
-                    String key = fichier.getName() + "_" + cpt.get();
-                    ThreadContext.put("package", fichier.getName() + ";" + cpt.get());
-                    ProducerRecord<String, String> record = new ProducerRecord<>(topicKbart, calculatePartition(nbThread), key, kbart);
-                    kafkaTemplate.send(record);
-                }));
-            } else {
-                ThreadContext.put("package", fichier.getName());
-                throw new IllegalFileFormatException("Format du fichier incorrect");
             }
-        } catch (IOException ex) {
-            ThreadContext.put("package", fichier.getName());
-            log.error("Erreur d'envoi dans kafka " + ex.getMessage());
         } finally {
-            executor.shutdown();
+            ThreadContext.put("package", fileName);
+            publish(report, job);
+        }
+        metrics.recordValidation("tabulation", tabulationDuration);
+        metrics.recordValidation("publication_title", titleDuration);
+        metrics.recordValidation("utf8", utf8Duration);
+        metrics.recordValidation("line", lineDuration);
+        metrics.recordValidation("lines", System.nanoTime() - startVerification);
+        if (report.hasErrors()) {
+            throw new IllegalFileFormatException("Format du fichier incorrect");
         }
+        return nbLignesFichier;
     }
 
-    public Integer calculatePartition(Integer nbPartitions) throws ArithmeticException {
-        if (nbPartitions == 0) {
-            throw new ArithmeticException("Nombre de threads = 0");
+    /**
+     * Rattache le rapport de contrôle au traitement et le publie : un seul log par règle en erreur,
+     * quel que soit le nombre de lignes concernées
+     */
+    private void publish(ValidationReport report, Job job) {
+        job.setReport(report);
+        if (report.hasErrors()) {
+            metrics.validationErrors(report);
+            for (ValidationReport.Entry entry : report.getEntries()) {
+                log.error("Erreur dans le fichier en entrée : " + entry);
+            }
+        }
+    }
+
+    private void executeMultiThread(File fichier, int nbLignesFichier, Job job, DeltaPlan delta) throws IllegalFileFormatException, IOException, InterruptedException {
+        // un fichier compressé est identifié dans kafka et dans les logs par le nom du fichier tsv qu'il contient
+        String fileName = KbartFiles.tsvName(fichier.getName());
+        JobContext context = newContext(fileName, job);
+        int nbMessages = (delta == null) ? nbLignesFichier : delta.size(nbLignesFichier);
+        // numéro du message dans l'envoi, égal au numéro de ligne hors entête lorsque toutes les lignes sont envoyées
+        int sequence = 0;
+        KafkaTransaction transaction = transactional ? new KafkaTransaction(kafkaTemplate.getProducerFactory(), transactionBatchSize, metrics) : null;
+        try (KbartTokenizer ligneKbart = KbartTokenizer.open(fichier)) {
+            log.debug("Début d'envoi de " + nbMessages + " lignes du fichier");
+            KbartColumns columns = KbartColumns.compile(ligneKbart.nextLine() ? ligneKbart.line() : "");
+            while (ligneKbart.nextLine()) {
+                int cpt = ligneKbart.getLineNumber();
+                if (ligneKbart.isBlank()) {
+                    continue;
+                }
+                OPERATION_TYPE operation = (delta == null) ? null : delta.operation(cpt);
+                if (delta != null && operation == null) {
+                    continue;
+                }
+                LigneKbartDto dto;
+                try {
+                    dto = constructDto(columns.fields(ligneKbart), ++sequence + 1, nbMessages);
+                } catch (IllegalDateException e) {
+                    context.logContext(cpt);
+                    log.error("Erreur dans le fichier en entrée à la ligne " + cpt + " : " + e.getMessage());
+                    throw new IllegalFileFormatException("Format du fichier incorrect");
+                }
+                send(context, transaction, cpt, fileName + "_" + cpt, dto, operation);
+            }
+            if (delta != null) {
+                for (String deletedKey : delta.getDeletedKeys()) {
+                    LigneKbartDto dto = deletedLine(deletedKey, ++sequence, nbMessages);
+                    send(context, transaction, sequence, fileName + "_" + OPERATION_TYPE.DELETE + "_" + sequence, dto, OPERATION_TYPE.DELETE);
+                }
+            }
+            if (transaction != null) {
+                transaction.commit();
+            }
+        } finally {
+            if (transaction != null) {
+                // en cas d'erreur, les lignes du lot en cours ne seront jamais visibles des consommateurs read_committed
+                transaction.close();
+            }
+            // les lignes déjà confiées aux threads d'envoi sont acquittées avant de rendre la main, même en cas d'erreur
+            awaitAcknowledgements(job);
+            context.logContext();
         }
-        return lastThreadUsed.getAndIncrement() % nbPartitions;
+    }
+
+    /**
+     * Chargement en une seule lecture d'un fichier reçu en flux : chaque ligne est contrôlée puis envoyée dans kafka
+     * dès sa réception, sans attendre la fin du fichier.
+     * Le chargement s'arrête à la première erreur. Les lignes déjà envoyées restent dans kafka, sauf en chargement
+     * transactionnel (abes.kafka.transaction.enabled) où elles ne sont jamais visibles des consommateurs read_committed.
+     * Toutes les lignes sont envoyées : en chargement incrémental, le prochain fichier du package sera envoyé en entier.
+     *
+     * @param fileName        nom du fichier, déjà contrôlé
+     * @param in              contenu du fichier, compressé ou non selon l'extension de son nom
+     * @param nbLignesFichier nombre de lignes de données annoncé par le client, transmis dans chaque message
+     * @param header          entête attendu
+     * @param job             suivi du traitement
+     * @throws IllegalFileFormatException une ligne est incorrecte ou le nombre de lignes reçues diffère du nombre annoncé
+     * @throws IOException                impossible de lire le flux
+     * @throws KafkaException             au moins une ligne n'a pas pu être envoyée dans kafka
+     */
+    public void loadStream(String fileName, InputStream in, int nbLignesFichier, String header, Job job) throws IllegalFileFormatException, IOException, InterruptedException {
+        if (!deltaService.isEnabled()) {
+            sendStream(fileName, in, nbLignesFichier, header, job);
+            return;
+        }
+        // pas de chargement incrémental simultané du même package pendant l'envoi
+        Lock packageLock = deltaService.packageLock(fileName);
+        packageLock.lockInterruptibly();
+        try {
+            sendStream(fileName, in, nbLignesFichier, header, job);
+            // les empreintes du package ne correspondent plus au dernier fichier chargé
+            deltaService.invalidateIndex(fileName);
+        } finally {
+            packageLock.unlock();
+        }
+    }
+
+    private void sendStream(String fileName, InputStream in, int nbLignesFichier, String header, Job job) throws IllegalFileFormatException, IOException, InterruptedException {
+        String tsvName = KbartFiles.tsvName(fileName);
+        boolean isBypassOptionPresent = CheckFiles.detectFileNameAndReturnIsBypass(new File(fileName));
+        JobContext context = newContext(tsvName, job);
+        ValidationReport report = new ValidationReport(tsvName, reportMaxRanges, reportMaxSamples, reportMaxErrors);
+        int nbLignes = 0;
+        KafkaTransaction transaction = transactional ? new KafkaTransaction(kafkaTemplate.getProducerFactory(), transactionBatchSize, metrics) : null;
+        // contexte de log posé une fois pour le fichier : les erreurs de ligne sont publiées par le rapport de contrôle
+        context.logContext();
+        // durées cumulées sur le flux, publiées une seule fois en fin de lecture
+        long tabulationDuration = 0;
+        long titleDuration = 0;
+        try (KbartTokenizer ligneKbart = new KbartTokenizer(KbartFiles.openChannel(in, fileName))) {
+            long startHeader = System.nanoTime();
+            KbartColumns columns = CheckFiles.checkHeader(header, ligneKbart.nextLine() ? ligneKbart.line() : null, isBypassOptionPresent);
+            CheckFiles.lap(metrics::recordValidation, "header", startHeader);
+            boolean blankLineFound = false;
+            while (ligneKbart.nextLine()) {
+                int cpt = ligneKbart.getLineNumber();
+                if (ligneKbart.isBlank()) {
+                    blankLineFound = true;
+                    continue;
+                }
+                LigneKbartDto dto = null;
+                try {
+                    if (blankLineFound) {
+                        throw new IllegalFileFormatException("Le fichier ne contient pas de tabulation");
+                    }
+                    long start = System.nanoTime();
+                    CheckFiles.detectTabulations(ligneKbart);
+                    long tabulationEnd = System.nanoTime();
+                    tabulationDuration += tabulationEnd - start;
+                    CheckFiles.checkPublicationTitle(ligneKbart, columns);
+                    titleDuration += System.nanoTime() - tabulationEnd;
+                    if (verifyUtf8(ligneKbart, columns, 0, report) && verifyLine(ligneKbart, columns, report)) {
+                        dto = constructDto(columns.fields(ligneKbart), ++nbLignes + 1, nbLignesFichier);
+                    }
+                } catch (IllegalDateException | IllegalFileFormatException e) {
+                    report.add(e.getClass().getSimpleName(), e.getMessage(), null, cpt, null);
+                }
+                if (dto == null) {
+                    job.error();
+                    throw new IllegalFileFormatException("Format du fichier incorrect");
+                }
+                job.lineParsed();
+                send(context, transaction, cpt, tsvName + "_" + cpt, dto, null);
+            }
+            if (nbLignes != nbLignesFichier) {
+                throw new IllegalFileFormatException("Le fichier contient " + nbLignes + " lignes au lieu des " + nbLignesFichier + " annoncées");
+            }
+            if (transaction != null) {
+                transaction.commit();
+            }
+        } finally {
+            if (transaction != null) {
+                transaction.close();
+            }
+            awaitAcknowledgements(job);
+            context.logContext();
+            publish(report, job);
+            metrics.recordValidation("tabulation", tabulationDuration);
+            metrics.recordValidation("publication_title", titleDuration);
+        }
+        checkSendErrors(job);
+    }
+
+    /**
+     * Attente bornée des acquittements : un envoi perdu (producteur bloqué, arrêt de l'application) fait échouer le
+     * traitement au lieu de le bloquer indéfiniment
+     */
+    private void awaitAcknowledgements(Job job) throws InterruptedException {
+        long pending = job.awaitAcknowledgements(acknowledgementTimeout);
+        if (pending > 0) {
+            log.error(pending + " lignes non acquittées par kafka après " + acknowledgementTimeout / 1000 + " secondes");
+        }
+    }
+
+    /**
+     * La stratégie de partitionnement est créée pour ce traitement : sa position ne dépend pas des autres fichiers
+     */
+    private JobContext newContext(String fileName, Job job) {
+        return new JobContext(job, fileName, topicKbart, Utils.extractPackageKey(fileName),
+                serializers.forTopic(topicKbart), partitionStrategies.forTopic(topicKbart), countPartitions(topicKbart), workerPool);
+    }
+
+    private void send(JobContext context, KafkaTransaction transaction, int cpt, String key, LigneKbartDto dto, OPERATION_TYPE operation) throws IOException, InterruptedException {
+        Job job = context.getJob();
+        int partition = context.partition(dto);
+        long start = System.nanoTime();
+        byte[] kbart = context.getSerializer().serialize(dto);
+        metrics.recordSerialization(System.nanoTime() - start);
+        // bloque la lecture du fichier tant que trop de lignes sont en attente d'acquittement
+        metrics.recordBackpressure(inFlightLimiter.acquire(kbart.length));
+        job.lineSent();
+        if (transaction != null) {
+            // le producteur transactionnel est propre au fichier : l'envoi, asynchrone, est fait par le thread de lecture
+            long sendStart = metrics.sendStarted();
+            try {
+                transaction.send(record(context, partition, key, kbart, operation), (metadata, ex) -> acknowledged(context, cpt, kbart.length, sendStart, ex));
+            } catch (RuntimeException ex) {
+                acknowledged(context, cpt, kbart.length, sendStart, ex);
+                throw ex;
+            }
+            transaction.commitIfBatchFull();
+            return;
+        }
+        // pas de contexte de log par ligne sur les threads d'envoi : il n'est posé qu'en cas d'erreur (sendFailed).
+        // Les lignes d'une même partition sont confiées au producteur dans l'ordre du fichier
+        try {
+            context.lane(partition).execute(() -> {
+                long sendStart = metrics.sendStarted();
+                try {
+                    kafkaTemplate.send(record(context, partition, key, kbart, operation))
+                            .whenComplete((result, ex) -> acknowledged(context, cpt, kbart.length, sendStart, ex));
+                } catch (RuntimeException ex) {
+                    // envoi refusé avant d'être confié au producteur (tampon plein, topic inconnu...)
+                    acknowledged(context, cpt, kbart.length, sendStart, ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            acknowledged(context, cpt, kbart.length, metrics.sendStarted(), ex);
+        }
+    }
+
+    private ProducerRecord<String, byte[]> record(JobContext context, int partition, String key, byte[] kbart, OPERATION_TYPE operation) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(context.getTopic(), partition, key, kbart);
+        record.headers().add(CONTENT_TYPE_HEADER, context.getContentType());
+        if (operation != null) {
+            record.headers().add(OPERATION_HEADER, operation.name().getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+
+    private void acknowledged(JobContext context, int cpt, int size, long sendStart, Throwable ex) {
+        inFlightLimiter.release(size);
+        if (ex == null) {
+            metrics.sendAcknowledged(sendStart);
+            context.getJob().lineAcknowledged();
+        } else {
+            sendFailed(context, cpt, ex, sendStart);
+        }
+    }
+
+    private void sendFailed(JobContext context, int cpt, Throwable ex, long sendStart) {
+        context.logContext(cpt);
+        log.error("Erreur d'envoi dans kafka de la ligne " + cpt + " : " + ex.getMessage());
+        metrics.sendFailed(sendStart, ex);
+        context.getJob().sendFailed();
+        JobContext.clearLogContext();
+    }
+
+    /**
+     * Message de suppression d'une ligne du précédent fichier du package : seules les colonnes d'identification sont renseignées
+     */
+    private LigneKbartDto deletedLine(String deletedKey, int sequence, int nbMessages) {
+        String[] fields = FingerprintIndex.fieldsOf(deletedKey);
+        LigneKbartDto dto = new LigneKbartDto();
+        dto.setNbCurrentLines(sequence);
+        dto.setNbLinesTotal(nbMessages);
+        dto.setPublication_title(fields[0]);
+        dto.setPrint_identifier(fields[1]);
+        dto.setOnline_identifier(fields[2]);
+        try {
+            dto.setDate_first_issue_online(Utils.reformatDateKbart(fields[3]));
+        } catch (IllegalDateException e) {
+            // la date a été contrôlée lors du chargement précédent
+            dto.setDate_first_issue_online(fields[3]);
+        }
+        dto.setNum_first_vol_online(fields[4]);
+        dto.setNum_first_issue_online(fields[5]);
+        dto.setTitle_id(fields[11]);
+        return dto;
+    }
+
+    /**
+     * @return le nombre de partitions du topic, lu dans les métadonnées du cluster kafka
+     */
+    private int countPartitions(String topic) {
+        List<PartitionInfo> partitions = kafkaTemplate.partitionsFor(topic);
+        if (partitions == null || partitions.isEmpty()) {
+            throw new KafkaException("Impossible de récupérer les partitions du topic " + topic);
+        }
+        return partitions.size();
+    }
+
+    /**
+     * Contrôle de toutes les colonnes d'une ligne sans construire la dto : chaque erreur est ajoutée au rapport.
+     * Seules les valeurs incorrectes sont converties en chaînes de caractères.
+     *
+     * @param line    ligne courante du fichier
+     * @param columns colonnes du fichier
+     * @param report  rapport de contrôle du fichier
+     * @return true si la ligne est correcte
+     */
+    static boolean verifyLine(KbartTokenizer line, KbartColumns columns, ValidationReport report) {
+        if ((line.fieldCount() > columns.getColumnCount()) || (line.fieldCount() < columns.getMinFieldCount())) {
+            report.add(IllegalFileFormatException.class.getSimpleName(), "nombre de colonnes incorrect", null, line.getLineNumber(), String.valueOf(line.fieldCount()));
+            return false;
+        }
+        boolean valid = verifyDate(line, columns, KBART_COLUMN.date_first_issue_online, report);
+        valid &= verifyDate(line, columns, KBART_COLUMN.date_last_issue_online, report);
+        int publicationType = columns.index(KBART_COLUMN.publication_type);
+        if (!line.fieldEquals(publicationType, MONOGRAPH) && !line.fieldEquals(publicationType, SERIAL)) {
+            report.add(IllegalFileFormatException.class.getSimpleName(), "La valeur de PUBLICATION_TYPE est invalide", KBART_COLUMN.publication_type.name(), line.getLineNumber(), line.field(publicationType));
+            valid = false;
+        }
+        valid &= verifyDate(line, columns, KBART_COLUMN.date_monograph_published_print, report);
+        valid &= verifyDate(line, columns, KBART_COLUMN.date_monograph_published_online, report);
+        return valid;
+    }
+
+    /**
+     * Contrôle de l'encodage UTF-8 de la ligne sur ses octets, sans la décoder. Chaque séquence incorrecte est ajoutée
+     * au rapport avec sa colonne, sa position dans le fichier et la position du caractère dans la ligne.
+     *
+     * @param line    ligne courante du fichier
+     * @param columns colonnes du fichier
+     * @param start   position dans le fichier du début de la lecture, non nulle pour une portion de fichier
+     * @param report  rapport de contrôle du fichier
+     * @return true si la ligne est correctement encodée
+     */
+    static boolean verifyUtf8(KbartTokenizer line, KbartColumns columns, long start, ValidationReport report) {
+        byte[] buffer = line.buffer();
+        int lineStart = line.lineOffset();
+        int lineEnd = lineStart + line.lineLength();
+        int index = Utf8Validator.indexOfInvalid(buffer, lineStart, lineEnd);
+        if (index < 0) {
+            return true;
+        }
+        while (index >= 0) {
+            int length = Math.max(1, Utf8Validator.invalidLength(buffer, index, lineEnd));
+            StringBuilder value = new StringBuilder("octet ").append(start + line.getLinePosition() + index - lineStart)
+                    .append(", caractère ").append(characterNumber(buffer, lineStart, index)).append(" :");
+            for (int i = index; i < index + length; i++) {
+                value.append(String.format(" 0x%02X", buffer[i] & 0xff));
+            }
+            report.add(IllegalFileFormatException.class.getSimpleName(), MESSAGE_UTF8, columns.name(fieldAt(line, index)),
+                    line.getLineNumber(), value.toString());
+            index = Utf8Validator.indexOfInvalid(buffer, index + length, lineEnd);
+        }
+        return false;
+    }
+
+    /**
+     * @return numéro, à partir de 1, du caractère qui commence à cette position du tampon : les octets qui précèdent
+     * dans la ligne sont correctement encodés
+     */
+    private static int characterNumber(byte[] buffer, int lineStart, int index) {
+        int number = 1;
+        for (int i = lineStart; i < index; i++) {
+            if ((buffer[i] & 0xC0) != 0x80) {
+                number++;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * @return la position de la colonne contenant l'octet à cette position du tampon, -1 s'il n'appartient à aucune colonne
+     */
+    private static int fieldAt(KbartTokenizer line, int index) {
+        for (int i = 0; i < line.fieldCount(); i++) {
+            if (index >= line.fieldOffset(i) && index < line.fieldOffset(i) + line.fieldLength(i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean verifyDate(KbartTokenizer line, KbartColumns columns, KBART_COLUMN column, ValidationReport report) {
+        int index = columns.index(column);
+        if (KbartDateNormalizer.detect(line.buffer(), line.fieldOffset(index), line.fieldLength(index)) == DATE_FORMAT.INVALID) {
+            report.add(IllegalDateException.class.getSimpleName(), KbartDateNormalizer.MESSAGE_ERREUR, column.name(), line.getLineNumber(), line.field(index));
+            return false;
+        }
+        return true;
     }
 
     /**
      * Construction de la dto
      *
-     * @param line ligne en entrée
+     * @param line colonnes de la ligne dans l'ordre de {@link KBART_COLUMN}, voir {@link KbartColumns#fields(KbartTokenizer)}
      * @return Un objet DTO initialisé avec les informations de la ligne
      */
     public LigneKbartDto constructDto(String[] line, Integer ligneCourante, Integer nbLignesFichier) throws IllegalFileFormatException, IllegalDateException {
-        if ((line.length > 26) || (line.length < 25)) {
-            throw new IllegalFileFormatException("nombre de colonnes incorrect");
-        }
         LigneKbartDto kbartLineInDtoObject = new LigneKbartDto();
         kbartLineInDtoObject.setNbCurrentLines(ligneCourante - 1);
         kbartLineInDtoObject.setNbLinesTotal(nbLignesFichier);
@@ -0,0 +1,56 @@
+package fr.abes.kbart2kafka.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limite le nombre de lignes et d'octets envoyés dans kafka et non encore acquittés, tous chargements confondus.
+ * La lecture des fichiers est bloquée tant qu'une des deux limites est atteinte : la mémoire utilisée par les
+ * lignes en attente ne dépend ni de la taille des fichiers ni de la disponibilité de kafka.
+ */
+class InFlightLimiter {
+    private final Semaphore records;
+    private final Semaphore bytes;
+    private final int maxBytes;
+
+    InFlightLimiter(int maxRecords, int maxBytes) {
+        this.records = new Semaphore(Math.max(1, maxRecords));
+        this.maxBytes = Math.max(1, maxBytes);
+        this.bytes = new Semaphore(this.maxBytes);
+    }
+
+    /**
+     * Réserve la place d'une ligne, en attendant si nécessaire les acquittements des lignes déjà envoyées
+     *
+     * @param size taille de la ligne sérialisée
+     * @return la durée d'attente en nanosecondes, 0 si la place était disponible
+     */
+    long acquire(int size) throws InterruptedException {
+        int permits = permits(size);
+        long start = System.nanoTime();
+        boolean waited = false;
+        if (!records.tryAcquire()) {
+            records.acquire();
+            waited = true;
+        }
+        if (!bytes.tryAcquire(permits)) {
+            try {
+                bytes.acquire(permits);
+            } catch (InterruptedException e) {
+                records.release();
+                throw e;
+            }
+            waited = true;
+        }
+        return waited ? System.nanoTime() - start : 0;
+    }
+
+    void release(int size) {
+        bytes.release(permits(size));
+        records.release();
+    }
+
+    private int permits(int size) {
+        // une ligne plus grosse que la limite passe seule
+        return Math.min(Math.max(size, 1), maxBytes);
+    }
+}
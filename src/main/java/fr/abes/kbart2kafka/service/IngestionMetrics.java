@@ -0,0 +1,134 @@
+package fr.abes.kbart2kafka.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Métriques du chargement des fichiers kbart, exposées par l'actuator (/actuator/prometheus).
+ * Les durées des contrôles de {@link fr.abes.kbart2kafka.utils.CheckFiles} sont publiées sous le nom
+ * {@value #VALIDATION_TIMER}, avec le nom du contrôle dans le tag {@code check}.
+ */
+@Component
+public class IngestionMetrics {
+    public static final String VALIDATION_TIMER = "kbart.validation.duration";
+    public static final String LINES_PER_SECOND = "kbart.file.lines.per.second";
+
+    private final MeterRegistry registry;
+    private final Timer serializationTimer;
+    private final Timer sendTimer;
+    private final Timer dbLookupTimer;
+    private final Timer backpressureTimer;
+    private final Counter linesSent;
+    private final Counter linesAcknowledged;
+    private final DistributionSummary linesPerSecond;
+    private final AtomicLong inFlight = new AtomicLong();
+
+    public IngestionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.serializationTimer = Timer.builder("kbart.serialization.duration")
+                .description("Durée de sérialisation d'une ligne kbart")
+                .register(registry);
+        this.sendTimer = Timer.builder("kbart.kafka.send.duration")
+                .description("Durée entre l'envoi d'une ligne dans kafka et son acquittement")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.dbLookupTimer = Timer.builder("kbart.db.lookup.duration")
+                .description("Durée de recherche du package le plus récent dans la base bacon")
+                .register(registry);
+        this.backpressureTimer = Timer.builder("kbart.backpressure.duration")
+                .description("Attente de la lecture des fichiers quand trop de lignes sont en attente d'acquittement par kafka")
+                .register(registry);
+        this.linesSent = Counter.builder("kbart.lines.sent").register(registry);
+        this.linesAcknowledged = Counter.builder("kbart.lines.acknowledged").register(registry);
+        this.linesPerSecond = DistributionSummary.builder(LINES_PER_SECOND)
+                .description("Débit de chargement de chaque fichier (lignes acquittées par seconde)")
+                .register(registry);
+        Gauge.builder("kbart.kafka.inflight", inFlight, AtomicLong::get)
+                .description("Nombre de lignes envoyées dans kafka en attente d'acquittement")
+                .register(registry);
+    }
+
+    public void recordValidation(String check, long durationNanos) {
+        registry.timer(VALIDATION_TIMER, "check", check).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSerialization(long durationNanos) {
+        serializationTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordBackpressure(long durationNanos) {
+        if (durationNanos > 0) {
+            backpressureTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Durée de validation (commit) ou d'annulation (abort) d'une transaction kafka
+     */
+    public void recordTransaction(String outcome, long durationNanos) {
+        registry.timer("kbart.kafka.transaction.duration", "outcome", outcome).record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return l'instant de l'envoi, à transmettre à {@link #sendAcknowledged(long)} ou {@link #sendFailed(long, Throwable)}
+     */
+    public long sendStarted() {
+        linesSent.increment();
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void sendAcknowledged(long sendStart) {
+        inFlight.decrementAndGet();
+        linesAcknowledged.increment();
+        sendTimer.record(System.nanoTime() - sendStart, TimeUnit.NANOSECONDS);
+    }
+
+    public void sendFailed(long sendStart, Throwable ex) {
+        inFlight.decrementAndGet();
+        sendTimer.record(System.nanoTime() - sendStart, TimeUnit.NANOSECONDS);
+        error(ex);
+    }
+
+    public void error(Throwable ex) {
+        registry.counter("kbart.errors", "exception", ex.getClass().getSimpleName()).increment();
+    }
+
+    /**
+     * Erreurs du contrôle d'un fichier, comptées en une fois par règle
+     */
+    public void validationErrors(ValidationReport report) {
+        for (ValidationReport.Entry entry : report.getEntries()) {
+            registry.counter("kbart.errors", "exception", entry.getException()).increment(entry.getCount());
+        }
+    }
+
+    public <T> T timeDbLookup(Supplier<T> lookup) {
+        return dbLookupTimer.record(lookup);
+    }
+
+    public void monitor(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    /**
+     * Durée du traitement, par état final, et débit de chargement du fichier. Le débit d'un fichier donné est
+     * consultable sur son traitement (/jobs/{id}) : un tag par fichier créerait une série par chargement.
+     */
+    public void jobFinished(Job job) {
+        registry.timer("kbart.job.duration", "state", job.getState().name()).record(job.getDuration());
+        linesPerSecond.record(job.getThroughput());
+    }
+}
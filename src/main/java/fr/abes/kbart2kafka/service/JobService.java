@@ -0,0 +1,251 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.exception.IllegalDateException;
+import fr.abes.kbart2kafka.exception.IllegalPackageException;
+import fr.abes.kbart2kafka.exception.IllegalProviderException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.utils.CheckFiles;
+import fr.abes.kbart2kafka.utils.KbartFiles;
+import fr.abes.kbart2kafka.utils.Utils;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Exécution asynchrone des chargements de fichiers kbart. Les derniers traitements sont conservés en mémoire
+ * pour pouvoir être consultés via l'API.
+ */
+@Service
+@Slf4j
+public class JobService {
+    static final String MORE_RECENT_PACKAGE = "Un package plus récent est déjà présent dans la base";
+
+    private final FileService fileService;
+    private final ProviderPackageService providerPackageService;
+    private final IngestionMetrics metrics;
+    private final ObjectProvider<WatchFolderService> watchFolderService;
+    private final String kbartHeader;
+    private final String pathToKbart;
+    private final ExecutorService jobExecutor;
+    private final Map<String, Job> jobs;
+
+    public JobService(FileService fileService, ProviderPackageService providerPackageService, IngestionMetrics metrics,
+                      @Value("${kbart.header}") String kbartHeader,
+                      @Value("${abes.pathToKbart}") String pathToKbart,
+                      @Value("${abes.jobs.nbThread:4}") int nbThread,
+                      @Value("${abes.jobs.maxRetained:1000}") int maxRetained,
+                      ObjectProvider<WatchFolderService> watchFolderService) {
+        this.fileService = fileService;
+        this.providerPackageService = providerPackageService;
+        this.metrics = metrics;
+        this.watchFolderService = watchFolderService;
+        this.kbartHeader = kbartHeader;
+        this.pathToKbart = pathToKbart;
+        this.jobExecutor = Executors.newFixedThreadPool(nbThread);
+        this.jobs = Collections.synchronizedMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Job> eldest) {
+                // les traitements terminés les plus anciens sont supprimés, même derrière un traitement en cours
+                Iterator<Job> retained = values().iterator();
+                while (size() > maxRetained && retained.hasNext()) {
+                    if (retained.next().isFinished()) {
+                        retained.remove();
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Planifie le chargement d'un fichier présent dans le répertoire des fichiers kbart
+     *
+     * @param fileName nom du fichier
+     * @return le traitement créé, dans l'état PENDING
+     */
+    public Job submit(String fileName) {
+        Job job = new Job(fileName);
+        jobs.put(job.getId(), job);
+        jobExecutor.execute(() -> run(job));
+        return job;
+    }
+
+    /**
+     * Planifie le chargement de plusieurs fichiers l'un après l'autre, dans l'ordre de la liste.
+     * Chaque fichier n'est planifié qu'à la fin du précédent : entre deux fichiers, le thread est rendu aux autres
+     * traitements en attente (fichiers envoyés un par un, surveillance du répertoire).
+     *
+     * @param fileNames noms des fichiers dans le répertoire des fichiers kbart
+     * @return les traitements créés, dans l'état PENDING
+     */
+    public List<Job> submitSequence(List<String> fileNames) {
+        List<Job> sequence = fileNames.stream().map(Job::new).toList();
+        sequence.forEach(job -> jobs.put(job.getId(), job));
+        submitNext(sequence.iterator());
+        return sequence;
+    }
+
+    private void submitNext(Iterator<Job> sequence) {
+        if (!sequence.hasNext()) {
+            return;
+        }
+        Job job = sequence.next();
+        try {
+            jobExecutor.execute(() -> {
+                run(job);
+                submitNext(sequence);
+            });
+        } catch (RejectedExecutionException e) {
+            // arrêt de l'application : les fichiers restants ne seront pas chargés
+            job.fail("Chargement annulé par l'arrêt de l'application");
+            sequence.forEachRemaining(remaining -> remaining.fail("Chargement annulé par l'arrêt de l'application"));
+        }
+    }
+
+    /**
+     * Chargement d'un fichier reçu en flux, exécuté par le thread appelant au fur et à mesure de la réception.
+     * Avec store, le fichier reçu est écrit en parallèle dans le répertoire des fichiers kbart, où il n'apparaît
+     * sous son nom qu'une fois chargé sans erreur. Il est alors signalé à la surveillance du répertoire, qui ne le
+     * charge pas une seconde fois.
+     *
+     * @param fileName        nom du fichier
+     * @param in              contenu du fichier
+     * @param nbLignesFichier nombre de lignes de données du fichier, hors entête
+     * @param store           conservation du fichier dans le répertoire des fichiers kbart
+     * @return le traitement, terminé
+     */
+    public Job runStream(String fileName, InputStream in, int nbLignesFichier, boolean store) {
+        Job job = new Job(fileName);
+        jobs.put(job.getId(), job);
+        ThreadContext.put("package", KbartFiles.tsvName(fileName));
+        job.start();
+        log.info("Debut envois kafka du flux : {}", fileName);
+        Path target = Paths.get(pathToKbart).resolve(fileName);
+        Path part = target.resolveSibling("." + fileName + ".part");
+        try {
+            File file = new File(fileName);
+            long start = System.nanoTime();
+            CheckFiles.detectFileNameAndReturnIsBypass(file);
+            start = CheckFiles.lap(metrics::recordValidation, "filename", start);
+            CheckFiles.detectProvider(file);
+            start = CheckFiles.lap(metrics::recordValidation, "provider", start);
+            CheckFiles.isFileWithTSVExtension(file);
+            CheckFiles.lap(metrics::recordValidation, "extension", start);
+            checkExistingPackage(fileName);
+            if (store) {
+                try (InputStream tee = new TeeInputStream(in, Files.newOutputStream(part), true)) {
+                    // le chargement ferme le flux qu'il lit : la copie doit rester ouverte pour en lire la fin
+                    fileService.loadStream(fileName, CloseShieldInputStream.wrap(tee), nbLignesFichier, kbartHeader, job);
+                    // fin d'une archive zip non lue par le chargement
+                    IOUtils.consume(tee);
+                }
+                Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                watchFolderService.ifAvailable(watch -> watch.markLoaded(fileName));
+            } else {
+                fileService.loadStream(fileName, in, nbLignesFichier, kbartHeader, job);
+            }
+            providerPackageService.packageLoaded(fileName);
+            job.complete();
+        } catch (Exception | IllegalPackageException e) {
+            job.fail(e.getMessage());
+            metrics.error(e);
+            log.error(e.getMessage());
+            log.info("Traitement refusé du flux {}", fileName);
+            deleteQuietly(part);
+        } finally {
+            metrics.jobFinished(job);
+            log.debug("Temps d'exécution : {} secondes", job.getDuration().toMillis() / 1000d);
+            ThreadContext.clearAll();
+        }
+        return job;
+    }
+
+    /**
+     * Enregistre le refus d'un fichier sans le charger
+     *
+     * @param fileName nom du fichier dans le répertoire des fichiers kbart
+     * @param message  cause du refus
+     * @return le traitement, dans l'état FAILED
+     */
+    public Job refuse(String fileName, String message) {
+        Job job = new Job(fileName);
+        jobs.put(job.getId(), job);
+        ThreadContext.put("package", KbartFiles.tsvName(fileName));
+        job.start();
+        job.fail(message);
+        metrics.jobFinished(job);
+        log.error(message);
+        log.info("Traitement refusé du fichier {}", fileName);
+        ThreadContext.clearAll();
+        return job;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer {} : {}", path, e.getMessage());
+        }
+    }
+
+    public Optional<Job> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    void run(Job job) {
+        ThreadContext.put("package", KbartFiles.tsvName(job.getFileName()));
+        job.start();
+        log.info("Debut envois kafka de : {}", job.getFileName());
+        //	Récupération du chemin d'accès au fichier
+        File tsvFile = new File(pathToKbart + job.getFileName());
+        try {
+            CheckFiles.verifyFile(tsvFile, kbartHeader, metrics::recordValidation);
+            checkExistingPackage(tsvFile.getName());
+            fileService.loadFile(tsvFile, job);
+            providerPackageService.packageLoaded(tsvFile.getName());
+            job.complete();
+        } catch (Exception | IllegalPackageException e) {
+            job.fail(e.getMessage());
+            metrics.error(e);
+            log.error(e.getMessage());
+            log.info("Traitement refusé du fichier {}", tsvFile.getName());
+        } finally {
+            metrics.jobFinished(job);
+            log.debug("Temps d'exécution : {} secondes", job.getDuration().toMillis() / 1000d);
+            ThreadContext.clearAll();
+        }
+    }
+
+    private void checkExistingPackage(String filename) throws IllegalProviderException, IllegalPackageException, IllegalDateException {
+        if (providerPackageService.hasMoreRecentPackageInBdd(Utils.extractProvider(filename), Utils.extractPackageName(filename), Utils.extractDateFilename(filename)))
+            throw new IllegalPackageException(MORE_RECENT_PACKAGE);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        jobExecutor.shutdown();
+    }
+}
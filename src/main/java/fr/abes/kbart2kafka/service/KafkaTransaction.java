@@ -0,0 +1,92 @@
+package fr.abes.kbart2kafka.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.springframework.kafka.core.ProducerFactory;
+
+import java.io.Closeable;
+
+/**
+ * Envoi des lignes d'un fichier dans des transactions kafka successives de batchSize messages
+ * (0 : une seule transaction pour tout le fichier).
+ * Les messages d'une transaction ne sont visibles des consommateurs en isolation read_committed qu'une fois
+ * la transaction validée : un chargement interrompu n'expose au plus que les lots déjà validés.
+ * Une transaction n'est utilisée que par le thread qui lit le fichier.
+ */
+@Slf4j
+class KafkaTransaction implements Closeable {
+    private final Producer<String, byte[]> producer;
+    private final int batchSize;
+    private final IngestionMetrics metrics;
+    private boolean inTransaction;
+    private int pending;
+
+    KafkaTransaction(ProducerFactory<String, byte[]> producerFactory, int batchSize, IngestionMetrics metrics) {
+        this.producer = producerFactory.createProducer();
+        this.batchSize = batchSize;
+        this.metrics = metrics;
+    }
+
+    void send(ProducerRecord<String, byte[]> record, Callback callback) {
+        if (!inTransaction) {
+            producer.beginTransaction();
+            inTransaction = true;
+        }
+        producer.send(record, callback);
+        pending++;
+    }
+
+    /**
+     * Valide la transaction en cours si elle contient batchSize messages
+     */
+    void commitIfBatchFull() {
+        if (batchSize > 0 && pending >= batchSize) {
+            commit();
+        }
+    }
+
+    /**
+     * Valide la transaction en cours : attend l'acquittement de tous ses messages
+     *
+     * @throws KafkaException au moins un message de la transaction n'a pas pu être envoyé
+     */
+    void commit() {
+        if (inTransaction) {
+            long start = System.nanoTime();
+            producer.commitTransaction();
+            metrics.recordTransaction("commit", System.nanoTime() - start);
+            inTransaction = false;
+            pending = 0;
+        }
+    }
+
+    void abort() {
+        if (inTransaction) {
+            long start = System.nanoTime();
+            try {
+                producer.abortTransaction();
+                metrics.recordTransaction("abort", System.nanoTime() - start);
+            } catch (KafkaException e) {
+                // le producteur est alors fermé : la transaction est annulée par le broker à l'expiration de son délai
+                log.error("Impossible d'annuler la transaction kafka : " + e.getMessage());
+            }
+            inTransaction = false;
+            pending = 0;
+        }
+    }
+
+    /**
+     * Annule la transaction en cours si elle n'a pas été validée et rend le producteur à la fabrique
+     */
+    @Override
+    public void close() {
+        try {
+            abort();
+        } finally {
+            producer.close();
+        }
+    }
+}
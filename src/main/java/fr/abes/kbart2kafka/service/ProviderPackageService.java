@@ -1,35 +1,130 @@
 package fr.abes.kbart2kafka.service;
 
-import fr.abes.kbart2kafka.entity.Provider;
-import fr.abes.kbart2kafka.entity.ProviderPackage;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import fr.abes.kbart2kafka.exception.IllegalPackageException;
 import fr.abes.kbart2kafka.repository.ProviderPackageRepository;
-import fr.abes.kbart2kafka.repository.ProviderRepository;
+import fr.abes.kbart2kafka.utils.Utils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+/**
+ * Recherche dans la base bacon de la date du package le plus récent d'un provider.
+ * Les dates sont conservées dans un cache borné (abes.bacon.cache.maxSize) dont les entrées expirent après
+ * abes.bacon.cache.ttl, afin de prendre en compte les packages chargés entre temps dans la base.
+ * Un package chargé par l'application est reporté aussitôt dans le cache, sans attendre son insertion dans la base.
+ */
 @Service
+@Slf4j
 public class ProviderPackageService {
+    // limite des listes IN d'Oracle
+    private static final int MAX_IN_LIST = 1000;
+
     private final ProviderPackageRepository repository;
 
-    private final ProviderRepository providerRepository;
+    private final IngestionMetrics metrics;
+
+    private final Cache<PackageKey, Optional<Date>> latestDates;
 
-    public ProviderPackageService(ProviderPackageRepository repository, ProviderRepository providerRepository) {
+    public ProviderPackageService(ProviderPackageRepository repository, IngestionMetrics metrics,
+                                  @Value("${abes.bacon.cache.maxSize:10000}") long cacheMaxSize,
+                                  @Value("${abes.bacon.cache.ttl:PT5M}") Duration cacheTtl) {
         this.repository = repository;
-        this.providerRepository = providerRepository;
+        this.metrics = metrics;
+        this.latestDates = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+        metrics.monitor(latestDates, "bacon.packages");
     }
 
     public boolean hasMoreRecentPackageInBdd(String provider, String packageName, Date datePackage) {
-        Optional<Provider> providerBdd = providerRepository.findByProvider(provider);
-        if (providerBdd.isPresent()) {
-            List<ProviderPackage> packageList = repository.findByPackageNameAndProviderIdtProvider(packageName, providerBdd.get().getIdtProvider());
-            Collections.sort(packageList);
-            if (!packageList.isEmpty())
-                return packageList.get(0).getDateP().after(datePackage);
+        Optional<Date> latestDate = latestDates.get(new PackageKey(provider, packageName),
+                key -> metrics.timeDbLookup(() -> repository.findLatestDateP(key.provider(), key.packageName())));
+        return latestDate.isPresent() && latestDate.get().after(datePackage);
+    }
+
+    /**
+     * Contrôle de plusieurs fichiers en une requête par tranche de {@value #MAX_IN_LIST} packages non présents dans le cache
+     *
+     * @param fileNames noms des fichiers kbart
+     * @return pour chaque fichier dont le nom est correct, true si un package plus récent est présent dans la base
+     */
+    public Map<String, Boolean> hasMoreRecentPackageInBdd(Collection<String> fileNames) {
+        Map<String, PackageKey> keys = new LinkedHashMap<>();
+        Map<String, Date> dates = new HashMap<>();
+        for (String fileName : fileNames) {
+            try {
+                keys.put(fileName, new PackageKey(Utils.extractProvider(fileName), Utils.extractPackageName(fileName)));
+                dates.put(fileName, Utils.extractDateFilename(fileName));
+            } catch (Exception | IllegalPackageException e) {
+                // le nom du fichier sera refusé lors du contrôle du fichier
+                keys.remove(fileName);
+            }
+        }
+        Map<PackageKey, Optional<Date>> latest = latestDates.getAll(new LinkedHashSet<>(keys.values()),
+                missing -> metrics.timeDbLookup(() -> findLatestDates(missing)));
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        keys.forEach((fileName, key) -> {
+            Optional<Date> latestDate = latest.get(key);
+            result.put(fileName, latestDate.isPresent() && latestDate.get().after(dates.get(fileName)));
+        });
+        return result;
+    }
+
+    /**
+     * Report dans le cache d'un fichier chargé avec succès : sa date devient celle du package le plus récent si elle
+     * est postérieure à celle connue
+     *
+     * @param fileName nom du fichier kbart chargé
+     */
+    public void packageLoaded(String fileName) {
+        PackageKey key;
+        Date datePackage;
+        try {
+            key = new PackageKey(Utils.extractProvider(fileName), Utils.extractPackageName(fileName));
+            datePackage = Utils.extractDateFilename(fileName);
+        } catch (Exception | IllegalPackageException e) {
+            return;
+        }
+        latestDates.asMap().merge(key, Optional.of(datePackage),
+                (known, loaded) -> (known.isPresent() && known.get().after(datePackage)) ? known : loaded);
+    }
+
+    private Map<PackageKey, Optional<Date>> findLatestDates(Set<? extends PackageKey> keys) {
+        Map<PackageKey, Optional<Date>> result = new HashMap<>();
+        keys.forEach(key -> result.put(key, Optional.empty()));
+        List<PackageKey> remaining = new ArrayList<>(keys);
+        for (int i = 0; i < remaining.size(); i += MAX_IN_LIST) {
+            List<PackageKey> chunk = remaining.subList(i, Math.min(i + MAX_IN_LIST, remaining.size()));
+            Set<String> providers = chunk.stream().map(PackageKey::provider).collect(Collectors.toSet());
+            Set<String> packageNames = chunk.stream().map(PackageKey::packageName).collect(Collectors.toSet());
+            for (ProviderPackageRepository.LatestPackageDate row : repository.findLatestDateP(providers, packageNames)) {
+                PackageKey key = new PackageKey(row.getProvider(), row.getPackageName());
+                // la requête renvoie aussi les combinaisons provider / package non demandées
+                if (result.containsKey(key)) {
+                    result.put(key, Optional.ofNullable(row.getDateP()));
+                }
+            }
         }
-        return false;
+        return result;
+    }
+
+    private record PackageKey(String provider, String packageName) {
     }
 }
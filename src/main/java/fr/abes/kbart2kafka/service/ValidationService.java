@@ -0,0 +1,222 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.exception.IllegalProviderException;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.utils.CheckFiles;
+import fr.abes.kbart2kafka.utils.KBART_COLUMN;
+import fr.abes.kbart2kafka.utils.KbartColumns;
+import fr.abes.kbart2kafka.utils.KbartFiles;
+import fr.abes.kbart2kafka.utils.KbartTokenizer;
+import fr.abes.kbart2kafka.validation.ValidationResult;
+import fr.abes.kbart2kafka.validation.ValidationStatistics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Contrôle à blanc d'un fichier kbart : mêmes contrôles que le chargement ({@link CheckFiles#verifyFile} puis
+ * contrôle de toutes les lignes), sans envoi dans kafka ni requête en base, complétés de statistiques sur les lignes.
+ * Un fichier non compressé est découpé en portions de lignes entières contrôlées en parallèle ; un fichier compressé,
+ * dont la décompression est séquentielle, est contrôlé en une seule lecture.
+ */
+@Service
+@Slf4j
+public class ValidationService {
+    private static final String FORMAT_EXCEPTION = IllegalFileFormatException.class.getSimpleName();
+
+    private final String kbartHeader;
+    private final String pathToKbart;
+    private final int nbThread;
+    private final long splitSize;
+
+    @Value("${abes.validation.report.maxRanges:20}")
+    private int reportMaxRanges;
+
+    @Value("${abes.validation.report.maxSamples:5}")
+    private int reportMaxSamples;
+
+    @Value("${abes.validation.report.maxErrors:20}")
+    private int reportMaxErrors;
+
+    private ExecutorService validationPool;
+
+    /**
+     * @param nbThread  nombre de portions contrôlées simultanément (0 : nombre de processeurs)
+     * @param splitSize taille minimale d'une portion en octets : un petit fichier n'est pas découpé
+     */
+    public ValidationService(@Value("${kbart.header}") String kbartHeader,
+                             @Value("${abes.pathToKbart}") String pathToKbart,
+                             @Value("${abes.validation.nbThread:0}") int nbThread,
+                             @Value("${abes.validation.splitSize:8388608}") long splitSize) {
+        this.kbartHeader = kbartHeader;
+        this.pathToKbart = pathToKbart;
+        this.nbThread = nbThread > 0 ? nbThread : Runtime.getRuntime().availableProcessors();
+        this.splitSize = Math.max(1, splitSize);
+    }
+
+    @PostConstruct
+    void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        validationPool = Executors.newFixedThreadPool(nbThread, r -> {
+            Thread thread = new Thread(r, "kbart-validation-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        validationPool.shutdownNow();
+    }
+
+    /**
+     * Contrôle à blanc des fichiers correspondant à un répertoire ou à un motif
+     *
+     * @param pattern sous-répertoire ou motif glob (ex : BRILL_*.tsv) relatif au répertoire des fichiers kbart
+     */
+    public List<ValidationResult> validateFiles(String pattern) throws IOException, InterruptedException {
+        List<ValidationResult> results = new ArrayList<>();
+        for (String fileName : KbartFiles.list(Paths.get(pathToKbart).toAbsolutePath().normalize(), pattern)) {
+            results.add(validate(Paths.get(pathToKbart).resolve(fileName).toFile()));
+        }
+        return results;
+    }
+
+    /**
+     * @param file fichier kbart, compressé ou non
+     * @return le résultat du contrôle, valide ou non. Un fichier refusé par le contrôle de son nom ou de son entête
+     * n'a ni statistiques ni rapport de contrôle des lignes.
+     */
+    public ValidationResult validate(File file) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ValidationResult result = new ValidationResult(file.getName());
+        KbartColumns columns;
+        try {
+            columns = CheckFiles.verifyFile(file, kbartHeader);
+        } catch (IllegalFileFormatException | IllegalProviderException e) {
+            result.setMessage(e.getMessage());
+            result.setDurationMs((System.nanoTime() - start) / 1_000_000);
+            return result;
+        }
+        long[] splits = KbartFiles.isCompressed(file.getName())
+                ? new long[]{0, -1}
+                : KbartFiles.splitLines(file, (int) Math.min(nbThread, Math.max(1, file.length() / splitSize)));
+        List<Future<Portion>> portions = new ArrayList<>();
+        for (int i = 0; i < splits.length - 1; i++) {
+            long portionStart = splits[i];
+            long portionEnd = splits[i + 1];
+            portions.add(validationPool.submit(() -> verifyPortion(file, columns, portionStart, portionEnd)));
+        }
+        ValidationReport report = newReport(file.getName());
+        ValidationStatistics statistics = new ValidationStatistics();
+        // lignes des portions précédentes, et présence d'une ligne vide non suivie d'une ligne de données
+        int lineOffset = 0;
+        boolean blankLineFound = false;
+        try {
+            for (Future<Portion> future : portions) {
+                Portion portion = future.get();
+                if (blankLineFound && portion.firstDataLine > 0) {
+                    report.add(FORMAT_EXCEPTION, "Le fichier ne contient pas de tabulation", null, lineOffset + portion.firstDataLine, null);
+                }
+                report.append(portion.report, lineOffset);
+                statistics.merge(portion.statistics);
+                blankLineFound = portion.endsWithBlankLine || (blankLineFound && portion.firstDataLine == 0);
+                lineOffset += portion.nbLines;
+            }
+        } catch (ExecutionException e) {
+            portions.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        result.setValid(!report.hasErrors());
+        result.setMessage(report.hasErrors() ? "Format du fichier incorrect" : null);
+        result.setStatistics(statistics);
+        result.setReport(report);
+        result.setNbSplits(portions.size());
+        result.setDurationMs((System.nanoTime() - start) / 1_000_000);
+        log.debug("Contrôle à blanc de {} en {} portions : {} lignes, {} erreurs en {} ms", file.getName(), portions.size(),
+                statistics.getLines(), report.getErrors(), result.getDurationMs());
+        return result;
+    }
+
+    /**
+     * Contrôle des lignes d'une portion du fichier, numérotées à partir du début de la portion.
+     * Contrairement au chargement, une ligne sans tabulation ou sans publication_title n'arrête pas le contrôle.
+     *
+     * @param columns colonnes du fichier, établies à partir de son entête
+     * @param end     fin de la portion, -1 pour lire tout le fichier
+     */
+    private Portion verifyPortion(File file, KbartColumns columns, long start, long end) throws IOException {
+        Portion portion = new Portion(newReport(file.getName()));
+        ValidationReport report = portion.report;
+        try (KbartTokenizer ligneKbart = end < 0 ? KbartTokenizer.open(file) : new KbartTokenizer(KbartFiles.openChannel(file, start, end))) {
+            if (start == 0) {
+                // l'entête a déjà été contrôlé
+                ligneKbart.nextLine();
+            }
+            boolean blankLineFound = false;
+            boolean blankLineReported = false;
+            while (ligneKbart.nextLine()) {
+                int cpt = ligneKbart.getLineNumber();
+                if (ligneKbart.isBlank()) {
+                    blankLineFound = true;
+                    continue;
+                }
+                if (portion.firstDataLine == 0) {
+                    portion.firstDataLine = cpt;
+                }
+                if (blankLineFound && !blankLineReported) {
+                    report.add(FORMAT_EXCEPTION, "Le fichier ne contient pas de tabulation", null, cpt, null);
+                    blankLineReported = true;
+                }
+                blankLineFound = false;
+                if (!ligneKbart.hasTabulation()) {
+                    report.add(FORMAT_EXCEPTION, "Le fichier ne contient pas de tabulation", null, cpt, null);
+                    continue;
+                }
+                if (ligneKbart.isFieldEmpty(columns.index(KBART_COLUMN.publication_title))) {
+                    report.add(FORMAT_EXCEPTION, "Le fichier a une ligne qui ne contient pas de publication_title", "publication_title", cpt, null);
+                }
+                portion.statistics.add(ligneKbart, columns);
+                FileService.verifyUtf8(ligneKbart, columns, start, report);
+                FileService.verifyLine(ligneKbart, columns, report);
+            }
+            portion.nbLines = ligneKbart.getLineNumber();
+            portion.endsWithBlankLine = blankLineFound;
+        }
+        return portion;
+    }
+
+    private ValidationReport newReport(String fileName) {
+        return new ValidationReport(fileName, reportMaxRanges, reportMaxSamples, reportMaxErrors);
+    }
+
+    private static class Portion {
+        private final ValidationReport report;
+        private final ValidationStatistics statistics = new ValidationStatistics();
+        private int nbLines;
+        // numéro de la première ligne non vide de la portion, 0 si elle ne contient que des lignes vides
+        private int firstDataLine;
+        private boolean endsWithBlankLine;
+
+        Portion(ValidationReport report) {
+            this.report = report;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.utils.KbartFiles;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chargement automatique des fichiers kbart déposés dans le répertoire des fichiers kbart (abes.watch.enabled=true).
+ * Les dépôts sont détectés par un {@link WatchService} et, en complément (événements perdus, systèmes de fichiers
+ * réseau), par un parcours périodique du répertoire. Un fichier n'est chargé qu'une fois sa taille et sa date de
+ * modification inchangées depuis abes.watch.stabilityDelay millisecondes, c'est à dire une fois sa copie terminée.
+ */
+@Service
+@ConditionalOnProperty(name = "abes.watch.enabled", havingValue = "true")
+@Slf4j
+public class WatchFolderService {
+    private final BatchService batchService;
+    private final Path directory;
+    private final long pollInterval;
+    private final long checkInterval;
+    private final long stabilityDelay;
+    private final boolean processExisting;
+
+    // fichiers en cours de dépôt et fichiers déjà soumis, par nom de fichier
+    private final Map<String, FileState> candidates = new ConcurrentHashMap<>();
+    private final Map<String, FileState> submitted = new HashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private WatchService watchService;
+    private Thread watchThread;
+
+    public WatchFolderService(BatchService batchService,
+                              @Value("${abes.pathToKbart}") String pathToKbart,
+                              @Value("${abes.watch.pollInterval:10000}") long pollInterval,
+                              @Value("${abes.watch.checkInterval:500}") long checkInterval,
+                              @Value("${abes.watch.stabilityDelay:2000}") long stabilityDelay,
+                              @Value("${abes.watch.processExisting:false}") boolean processExisting) {
+        this.batchService = batchService;
+        this.directory = Paths.get(pathToKbart).toAbsolutePath().normalize();
+        this.pollInterval = pollInterval;
+        this.checkInterval = checkInterval;
+        this.stabilityDelay = stabilityDelay;
+        this.processExisting = processExisting;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!processExisting) {
+            // les fichiers présents au démarrage ont déjà pu être chargés via l'API
+            scan().forEach(this::markSubmitted);
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchThread = new Thread(this::watch, "kbart-watch");
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Surveillance du répertoire {} indisponible, seul le parcours périodique est utilisé : {}", directory, e.getMessage());
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "kbart-watch-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollInterval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::submitReadyFiles, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+        log.info("Surveillance du répertoire {} des fichiers kbart", directory);
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        scheduler.execute(this::poll);
+                    } else if (event.context() instanceof Path path) {
+                        observe(path.getFileName().toString());
+                    }
+                }
+                if (!key.reset()) {
+                    log.warn("Le répertoire {} n'est plus surveillé", directory);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // arrêt de l'application
+        }
+    }
+
+    private void poll() {
+        try {
+            List<String> fileNames = scan();
+            fileNames.forEach(this::observe);
+            synchronized (submitted) {
+                // un fichier supprimé puis déposé à nouveau sous le même nom doit être chargé
+                submitted.keySet().retainAll(fileNames);
+            }
+        } catch (RuntimeException e) {
+            log.error("Erreur lors du parcours du répertoire {} : {}", directory, e.getMessage());
+        }
+    }
+
+    private void submitReadyFiles() {
+        try {
+            List<String> ready = collectReadyFiles(System.currentTimeMillis());
+            if (!ready.isEmpty()) {
+                log.info("Chargement automatique de {} fichiers déposés", ready.size());
+                batchService.submitFiles(ready);
+            }
+        } catch (RuntimeException e) {
+            log.error("Erreur lors du chargement automatique des fichiers déposés : {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param now instant courant, en millisecondes
+     * @return les fichiers dont le dépôt est terminé, retirés des candidats et marqués comme soumis
+     */
+    List<String> collectReadyFiles(long now) {
+        List<String> ready = new ArrayList<>();
+        for (Map.Entry<String, FileState> candidate : candidates.entrySet()) {
+            String fileName = candidate.getKey();
+            FileState previous = candidate.getValue();
+            FileState current = stat(fileName, now);
+            if (current == null) {
+                candidates.remove(fileName);
+            } else if (!current.sameContent(previous)) {
+                candidates.put(fileName, current);
+            } else if (now - previous.since() >= stabilityDelay) {
+                candidates.remove(fileName);
+                if (markSubmitted(fileName)) {
+                    ready.add(fileName);
+                }
+            }
+        }
+        return ready;
+    }
+
+    void observe(String fileName) {
+        if (!isKbart(fileName)) {
+            return;
+        }
+        FileState state = stat(fileName, System.currentTimeMillis());
+        if (state == null || isSubmitted(fileName, state)) {
+            return;
+        }
+        candidates.compute(fileName, (name, previous) -> (previous != null && previous.sameContent(state)) ? previous : state);
+    }
+
+    /**
+     * Signale un fichier écrit dans le répertoire après avoir été chargé par un autre moyen (flux conservé) :
+     * son dépôt ne doit pas déclencher un second chargement
+     *
+     * @param fileName nom du fichier dans le répertoire des fichiers kbart
+     */
+    public void markLoaded(String fileName) {
+        candidates.remove(fileName);
+        markSubmitted(fileName);
+    }
+
+    private boolean isSubmitted(String fileName, FileState state) {
+        synchronized (submitted) {
+            return state.sameContent(submitted.get(fileName));
+        }
+    }
+
+    private boolean markSubmitted(String fileName) {
+        FileState state = stat(fileName, 0);
+        if (state == null) {
+            return false;
+        }
+        synchronized (submitted) {
+            return !state.sameContent(submitted.put(fileName, state));
+        }
+    }
+
+    private List<String> scan() {
+        List<String> fileNames = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (isKbart(fileName) && Files.isRegularFile(file)) {
+                    fileNames.add(fileName);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Impossible de parcourir le répertoire {} : {}", directory, e.getMessage());
+        }
+        return fileNames;
+    }
+
+    private static boolean isKbart(String fileName) {
+        return !fileName.startsWith(".") && KbartFiles.isKbart(fileName);
+    }
+
+    private FileState stat(String fileName, long now) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(directory.resolve(fileName), BasicFileAttributes.class);
+            return new FileState(attributes.size(), attributes.lastModifiedTime().toMillis(), now);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Taille et date de modification d'un fichier, observées pour la première fois à l'instant since
+     */
+    private record FileState(long size, long lastModified, long since) {
+        boolean sameContent(FileState other) {
+            return other != null && size == other.size && lastModified == other.lastModified;
+        }
+    }
+}
@@ -6,21 +6,21 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.nio.charset.CharacterCodingException;
-import java.nio.charset.CharsetDecoder;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.function.ObjLongConsumer;
 
 @Slf4j
 public class CheckFiles {
+    // fichier tsv, éventuellement compressé (voir KbartFiles)
+    private static final String EXTENSION_PATTERN = "(\\.tsv(\\.gz|\\.zst|\\.zip)?|\\.zip)$";
 
     public static Boolean detectFileNameAndReturnIsBypass(File file) throws IllegalFileFormatException {
         String filename = file.getName();
-        if (!filename.matches("([a-zA-Z0-9\\-]+_){3}(\\d{4}-\\d{2}-\\d{2})+(_FORCE|_BYPASS)?+(.tsv)$")) {
+        if (!filename.matches("([a-zA-Z0-9\\-]+_){3}(\\d{4}-\\d{2}-\\d{2})+(_FORCE|_BYPASS)?+" + EXTENSION_PATTERN)) {
             throw new IllegalFileFormatException("Le nom du fichier "+ filename +" n'est pas correct");
-        } else return filename.matches("([a-zA-Z0-9\\-]+_){3}(\\d{4}-\\d{2}-\\d{2})+(_BYPASS)+(.tsv)$");
+        } else return filename.matches("([a-zA-Z0-9\\-]+_){3}(\\d{4}-\\d{2}-\\d{2})+(_BYPASS)+" + EXTENSION_PATTERN);
     }
 
     public static void detectProvider(File file) throws IllegalProviderException {
@@ -32,7 +32,7 @@ public class CheckFiles {
     }
 
     /**
-     * Controle si le fichier à bien une extension tsv
+     * Controle si le fichier à bien une extension tsv, éventuellement compressé (.tsv.gz, .tsv.zst, .zip)
      * @param file fichier en entrée
      * @throws IllegalFileFormatException format de fichier non conforme
      */
@@ -41,39 +41,30 @@ public class CheckFiles {
         String fileName = file.getName(); // get file name
         if (fileName.isEmpty())
             throw new IllegalFileFormatException("Le nom du fichier est vide"); // check if file name is valid
-        String[] parts = fileName.split("\\."); // split by dot
-        String extension = parts[parts.length - 1]; // get last part as extension
-        // compare with tsv ignoring case
-        if (!extension.equalsIgnoreCase("tsv"))
+        if (!KbartFiles.isKbart(fileName))
             throw new IllegalFileFormatException("le fichier n'est pas au format tsv");
     }
 
-    public static void checkPublicationTitle(File file) throws IllegalFileFormatException, IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            List<String> lines = reader.lines().toList();
-
-            if(lines.stream().anyMatch(line ->
-                    line.split("\t")[0] == null || line.split("\t")[0].isEmpty()
-            )){
-                throw new IllegalFileFormatException("Le fichier a une ligne qui ne contient pas de publication_title");
-            }
+    /**
+     * Contrôle que la ligne courante contient un publication_title
+     * @param ligne   ligne courante du fichier
+     * @param columns colonnes du fichier
+     * @throws IllegalFileFormatException la ligne ne contient pas de publication_title
+     */
+    public static void checkPublicationTitle(KbartTokenizer ligne, KbartColumns columns) throws IllegalFileFormatException {
+        if (ligne.isFieldEmpty(columns.index(KBART_COLUMN.publication_title))) {
+            throw new IllegalFileFormatException("Le fichier a une ligne qui ne contient pas de publication_title");
         }
     }
 
     /**
-     * Détecte si le fichier présente des tabulations
-     * @param file fichier en entrée
-     * @throws IOException erreur avec le fichier en entrée
+     * Détecte si la ligne courante présente des tabulations
+     * @param ligne ligne courante du fichier
+     * @throws IllegalFileFormatException la ligne ne contient pas de tabulation
      */
-    public static void detectTabulations(File file) throws IOException, IllegalFileFormatException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            List<String> lines = reader.lines().toList();
-
-            if(lines.stream().anyMatch(line ->
-                    (!line.contains("\t") && !(line.isBlank() && lines.lastIndexOf(line) == lines.size() -1)) // && isNotLast and blank
-            )){
-                throw new IllegalFileFormatException("Le fichier ne contient pas de tabulation");
-            }
+    public static void detectTabulations(KbartTokenizer ligne) throws IllegalFileFormatException {
+        if (!ligne.hasTabulation()) {
+            throw new IllegalFileFormatException("Le fichier ne contient pas de tabulation");
         }
     }
 
@@ -81,53 +72,83 @@ public class CheckFiles {
      * Détecte la présence d'un entête dans le fichier
      * @param header liste de header
      * @param file   fichier en entrée
+     * @return les colonnes du fichier
      * @throws IOException impossible de lire le fichier
      */
-    public static void detectHeaderPresence(String header, File file, Boolean isBypassOptionPresent) throws IOException, IllegalFileFormatException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line = reader.readLine();
-            line = line.replace("bestppn","best_ppn");
-            String[] headerKbart = line.split("\t");
+    public static KbartColumns detectHeaderPresence(String header, File file, Boolean isBypassOptionPresent) throws IOException, IllegalFileFormatException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(KbartFiles.open(file), StandardCharsets.UTF_8))) {
+            return checkHeader(header, reader.readLine(), isBypassOptionPresent);
+        }
+    }
 
-            if(isBypassOptionPresent && line.contains("best_ppn")) {
-                throw new IllegalFileFormatException("L'en tete du fichier est incorrecte. L'option _BYPASS n'est pas compatible avec la présence d'une colonne best_pnn");
-            }else if ((!(headerKbart.length == 25 && line.contains(header)) && !(headerKbart.length == 26 && line.contains(header) && line.contains("best_ppn")))) {
-                throw new IllegalFileFormatException( "L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : " + header + " et best_ppn" );
+    /**
+     * Contrôle de l'entête d'un fichier : chaque colonne du header attendu doit être présente une seule fois,
+     * dans un ordre quelconque. Les colonnes supplémentaires propres au fournisseur sont acceptées.
+     * @param header liste de header
+     * @param line   première ligne du fichier, null si le fichier est vide
+     * @return les colonnes du fichier
+     */
+    public static KbartColumns checkHeader(String header, String line, Boolean isBypassOptionPresent) throws IllegalFileFormatException {
+        if (line == null) {
+            throw new IllegalFileFormatException("Le fichier est vide");
+        }
+        KbartColumns columns = KbartColumns.compile(line);
+        if (isBypassOptionPresent && columns.contains(KBART_COLUMN.best_ppn)) {
+            throw new IllegalFileFormatException("L'en tete du fichier est incorrecte. L'option _BYPASS n'est pas compatible avec la présence d'une colonne best_pnn");
+        }
+        for (String column : header.split("\t")) {
+            if (columns.count(column) != 1) {
+                throw new IllegalFileFormatException("L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : " + header + " et best_ppn");
             }
         }
+        if (columns.count(KBART_COLUMN.best_ppn.name()) > 1) {
+            throw new IllegalFileFormatException("L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : " + header + " et best_ppn");
+        }
+        return columns;
     }
 
     /**
-     * Contrôle que le fichier à une extension tsv, qu'il contient des tabulations et
-     * qu'il contient un entête avec la présence d'un terme en paramètre
+     * Contrôle que le fichier à une extension tsv et qu'il contient un entête avec la présence d'un terme en paramètre.
+     * Seule la première ligne du fichier est lue : les contrôles portant sur les lignes (tabulations, publication_title,
+     * nombre de colonnes, UTF-8, dates, publication_type) sont effectués en une seule lecture par {@link fr.abes.kbart2kafka.service.FileService}
      * @param file le fichier en entrée
      * @param header la chaine de caractère à rechercher
      * @throws IllegalFileFormatException Format de fichier non conforme
+     * @return les colonnes du fichier
      * @throws IOException Impossible de lire le fichier
      */
-    public static void verifyFile(File file, String header) throws IllegalFileFormatException, IOException, IllegalProviderException {
+    public static KbartColumns verifyFile(File file, String header) throws IllegalFileFormatException, IOException, IllegalProviderException {
+        return verifyFile(file, header, (check, durationNanos) -> {
+        });
+    }
+
+    /**
+     * Contrôle du fichier comme {@link #verifyFile(File, String)}, en transmettant la durée de chaque contrôle réussi
+     * @param durations reçoit le nom du contrôle (filename, provider, extension, header) et sa durée en nanosecondes
+     */
+    public static KbartColumns verifyFile(File file, String header, ObjLongConsumer<String> durations) throws IllegalFileFormatException, IOException, IllegalProviderException {
         if(file.exists()) {
+            long start = System.nanoTime();
             Boolean isBypassOptionPresent = detectFileNameAndReturnIsBypass(file);
+            start = lap(durations, "filename", start);
             detectProvider(file);
+            start = lap(durations, "provider", start);
             isFileWithTSVExtension(file);
-            detectTabulations(file);
-            detectHeaderPresence(header, file, isBypassOptionPresent);
-            checkPublicationTitle(file);
+            start = lap(durations, "extension", start);
+            KbartColumns columns = detectHeaderPresence(header, file, isBypassOptionPresent);
+            lap(durations, "header", start);
+            return columns;
         } else {
             throw new IllegalFileFormatException("Le fichier "+file.getName()+" n'est pas trouvable");
         }
     }
 
-    public static void isValidUtf8(String input) throws IllegalFileFormatException {
-        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
-        String messageErreur = "le fichier contient des caracters qui ne sont pas en UTF8";
-        try {
-            decoder.decode(java.nio.ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
-        } catch (CharacterCodingException e) {
-            throw new IllegalFileFormatException(messageErreur);
-        }
-        if(input.contains("�")){
-            throw new IllegalFileFormatException(messageErreur);
-        }
+    /**
+     * @return l'instant de fin du contrôle, début du contrôle suivant
+     */
+    public static long lap(ObjLongConsumer<String> durations, String check, long start) {
+        long end = System.nanoTime();
+        durations.accept(check, end - start);
+        return end;
     }
 }
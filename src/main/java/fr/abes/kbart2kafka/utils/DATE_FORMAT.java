@@ -0,0 +1,5 @@
+package fr.abes.kbart2kafka.utils;
+
+public enum DATE_FORMAT {
+    EMPTY, YYYY, YYYY_MM, YYYY_MM_DD, INVALID
+}
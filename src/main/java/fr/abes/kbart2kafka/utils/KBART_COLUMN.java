@@ -0,0 +1,12 @@
+package fr.abes.kbart2kafka.utils;
+
+/**
+ * Colonnes kbart reprises dans les messages kafka, dans l'ordre de la norme suivi de best_ppn
+ */
+public enum KBART_COLUMN {
+    publication_title, print_identifier, online_identifier, date_first_issue_online, num_first_vol_online,
+    num_first_issue_online, date_last_issue_online, num_last_vol_online, num_last_issue_online, title_url,
+    first_author, title_id, embargo_info, coverage_depth, notes, publisher_name, publication_type,
+    date_monograph_published_print, date_monograph_published_online, monograph_volume, monograph_edition,
+    first_editor, parent_publication_title_id, preceding_publication_title_id, access_type, best_ppn
+}
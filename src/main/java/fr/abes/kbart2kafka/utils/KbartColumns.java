@@ -0,0 +1,130 @@
+package fr.abes.kbart2kafka.utils;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Correspondance entre les colonnes kbart ({@link KBART_COLUMN}) et leur position dans les lignes d'un fichier,
+ * établie une seule fois à partir de l'entête du fichier.
+ * Les colonnes peuvent être dans un ordre quelconque, les colonnes propres au fournisseur sont ignorées et
+ * {@code bestppn} est accepté pour {@code best_ppn}. Une colonne kbart absente de l'entête est lue comme une colonne vide.
+ * La lecture d'une ligne se limite ensuite à une copie de colonne à colonne, sans recherche par nom.
+ */
+public class KbartColumns {
+    private static final Map<String, String> ALIASES = Map.of("bestppn", KBART_COLUMN.best_ppn.name());
+    private static final KBART_COLUMN[] COLUMNS = KBART_COLUMN.values();
+    // position d'une colonne absente : au delà de la dernière colonne de toute ligne, elle est lue comme une colonne vide
+    private static final int ABSENT = Integer.MAX_VALUE;
+    private static final int BEST_PPN = KBART_COLUMN.best_ppn.ordinal();
+
+    private final String[] names;
+    private final int[] indexes;
+    private final int minFieldCount;
+
+    private KbartColumns(String[] names, int[] indexes, int minFieldCount) {
+        this.names = names;
+        this.indexes = indexes;
+        this.minFieldCount = minFieldCount;
+    }
+
+    /**
+     * @param header première ligne du fichier
+     * @return la correspondance des colonnes du fichier. En cas de colonne présente plusieurs fois, la première est retenue.
+     */
+    public static KbartColumns compile(String header) {
+        String[] names = header.split("\t");
+        int[] indexes = new int[COLUMNS.length];
+        Arrays.fill(indexes, ABSENT);
+        int minFieldCount = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = normalize(names[i]);
+            KBART_COLUMN column = column(names[i]);
+            if (column == null || indexes[column.ordinal()] != ABSENT) {
+                continue;
+            }
+            indexes[column.ordinal()] = i;
+            if (column != KBART_COLUMN.best_ppn) {
+                // les colonnes vides en fin de ligne n'étant pas comptées, la dernière colonne kbart doit être renseignée
+                minFieldCount = Math.max(minFieldCount, i + 1);
+            }
+        }
+        return new KbartColumns(names, indexes, minFieldCount);
+    }
+
+    /**
+     * @return position de la colonne dans les lignes du fichier
+     */
+    public int index(KBART_COLUMN column) {
+        return indexes[column.ordinal()];
+    }
+
+    public boolean contains(KBART_COLUMN column) {
+        return indexes[column.ordinal()] != ABSENT;
+    }
+
+    /**
+     * @param name nom de colonne, comparé sans tenir compte de la casse ni des espaces
+     * @return le nombre de colonnes de l'entête portant ce nom
+     */
+    public int count(String name) {
+        String normalized = normalize(name);
+        int count = 0;
+        for (String column : names) {
+            if (column.equals(normalized)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return le nom de la colonne de l'entête à cette position, null au delà de la dernière colonne
+     */
+    public String name(int index) {
+        return (index >= 0 && index < names.length) ? names[index] : null;
+    }
+
+    /**
+     * @return le nombre de colonnes de l'entête : une ligne ne peut pas en contenir plus
+     */
+    public int getColumnCount() {
+        return names.length;
+    }
+
+    /**
+     * @return le nombre minimum de colonnes d'une ligne, selon la même règle que {@link KbartTokenizer#fieldCount()}
+     */
+    public int getMinFieldCount() {
+        return minFieldCount;
+    }
+
+    /**
+     * @return les colonnes kbart de la ligne courante dans l'ordre de {@link KBART_COLUMN}, best_ppn à null s'il est vide
+     */
+    public String[] fields(KbartTokenizer line) {
+        String[] fields = new String[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            fields[i] = line.field(indexes[i]);
+        }
+        if (fields[BEST_PPN].isEmpty()) {
+            fields[BEST_PPN] = null;
+        }
+        return fields;
+    }
+
+    private static String normalize(String name) {
+        // le BOM UTF-8 éventuel en début de fichier n'est pas retiré par une lecture en caractères
+        String normalized = name.replace("\uFEFF", "").strip().toLowerCase(Locale.ROOT);
+        return ALIASES.getOrDefault(normalized, normalized);
+    }
+
+    private static KBART_COLUMN column(String name) {
+        for (KBART_COLUMN column : COLUMNS) {
+            if (column.name().equals(name)) {
+                return column;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,145 @@
+package fr.abes.kbart2kafka.utils;
+
+import fr.abes.kbart2kafka.exception.IllegalDateException;
+
+/**
+ * Reconnaissance et normalisation des dates kbart (YYYY, YYYY-MM ou YYYY-MM-DD) par lecture caractère par caractère,
+ * sans expression régulière. La valeur doit être exactement une date de l'un de ces formats, aux espaces près en début
+ * et fin de colonne. Mois et jour sont contrôlés (jour existant dans le mois, années bissextiles comprises).
+ */
+public class KbartDateNormalizer {
+    public static final String MESSAGE_ERREUR = "Format de date non reconnu, la date doit être au format YYYY ou YYYY-MM ou YYYY-MM-DD";
+
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private KbartDateNormalizer() {
+    }
+
+    /**
+     * Normalise une date kbart au format YYYY-MM-DD (premier jour du mois ou de l'année si la précision est moindre)
+     *
+     * @param date date en entrée
+     * @return la date normalisée, la chaîne vide si la date est vide
+     * @throws IllegalDateException la date n'est pas dans l'un des formats reconnus
+     */
+    public static String normalize(String date) throws IllegalDateException {
+        if (date == null) {
+            return "";
+        }
+        int start = 0;
+        int end = date.length();
+        while (start < end && date.charAt(start) == ' ') start++;
+        while (end > start && date.charAt(end - 1) == ' ') end--;
+        switch (detect(date, start, end)) {
+            case EMPTY:
+                return "";
+            case YYYY:
+                return date.substring(start, end).concat("-01-01");
+            case YYYY_MM:
+                return date.substring(start, end).concat("-01");
+            case YYYY_MM_DD:
+                return (start == 0 && end == date.length()) ? date : date.substring(start, end);
+            default:
+                throw new IllegalDateException(MESSAGE_ERREUR);
+        }
+    }
+
+    public static DATE_FORMAT detect(CharSequence date) {
+        return date == null ? DATE_FORMAT.EMPTY : detect(date, 0, date.length());
+    }
+
+    /**
+     * Reconnaissance du format d'une date encodée en UTF-8 dans un tampon, sans création d'objet
+     */
+    public static DATE_FORMAT detect(byte[] buffer, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && buffer[start] == ' ') start++;
+        while (end > start && buffer[end - 1] == ' ') end--;
+        int len = end - start;
+        if (len == 0) {
+            return DATE_FORMAT.EMPTY;
+        }
+        if (len != 4 && len != 7 && len != 10) {
+            return DATE_FORMAT.INVALID;
+        }
+        int year = digits(buffer[start], buffer[start + 1], buffer[start + 2], buffer[start + 3]);
+        if (year < 0) {
+            return DATE_FORMAT.INVALID;
+        }
+        if (len == 4) {
+            return DATE_FORMAT.YYYY;
+        }
+        if (buffer[start + 4] != '-') {
+            return DATE_FORMAT.INVALID;
+        }
+        int month = digits(buffer[start + 5], buffer[start + 6]);
+        if (month < 1 || month > 12) {
+            return DATE_FORMAT.INVALID;
+        }
+        if (len == 7) {
+            return DATE_FORMAT.YYYY_MM;
+        }
+        if (buffer[start + 7] != '-') {
+            return DATE_FORMAT.INVALID;
+        }
+        return isValidDay(year, month, digits(buffer[start + 8], buffer[start + 9])) ? DATE_FORMAT.YYYY_MM_DD : DATE_FORMAT.INVALID;
+    }
+
+    private static DATE_FORMAT detect(CharSequence date, int start, int end) {
+        int len = end - start;
+        if (len == 0) {
+            return DATE_FORMAT.EMPTY;
+        }
+        if (len != 4 && len != 7 && len != 10) {
+            return DATE_FORMAT.INVALID;
+        }
+        int year = digits(date.charAt(start), date.charAt(start + 1), date.charAt(start + 2), date.charAt(start + 3));
+        if (year < 0) {
+            return DATE_FORMAT.INVALID;
+        }
+        if (len == 4) {
+            return DATE_FORMAT.YYYY;
+        }
+        if (date.charAt(start + 4) != '-') {
+            return DATE_FORMAT.INVALID;
+        }
+        int month = digits(date.charAt(start + 5), date.charAt(start + 6));
+        if (month < 1 || month > 12) {
+            return DATE_FORMAT.INVALID;
+        }
+        if (len == 7) {
+            return DATE_FORMAT.YYYY_MM;
+        }
+        if (date.charAt(start + 7) != '-') {
+            return DATE_FORMAT.INVALID;
+        }
+        return isValidDay(year, month, digits(date.charAt(start + 8), date.charAt(start + 9))) ? DATE_FORMAT.YYYY_MM_DD : DATE_FORMAT.INVALID;
+    }
+
+    private static boolean isValidDay(int year, int month, int day) {
+        if (day < 1 || day > DAYS_IN_MONTH[month - 1]) {
+            return false;
+        }
+        return month != 2 || day < 29 || (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0));
+    }
+
+    private static int digit(int c) {
+        return (c >= '0' && c <= '9') ? c - '0' : -1;
+    }
+
+    /**
+     * @return la valeur numérique des chiffres, -1 si l'un des caractères n'est pas un chiffre
+     */
+    private static int digits(int c1, int c2) {
+        int d1 = digit(c1);
+        int d2 = digit(c2);
+        return (d1 | d2) < 0 ? -1 : d1 * 10 + d2;
+    }
+
+    private static int digits(int c1, int c2, int c3, int c4) {
+        int high = digits(c1, c2);
+        int low = digits(c3, c4);
+        return (high | low) < 0 ? -1 : high * 100 + low;
+    }
+}
@@ -0,0 +1,317 @@
+package fr.abes.kbart2kafka.utils;
+
+import com.github.luben.zstd.ZstdInputStreamNoFinalizer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Fichiers kbart, éventuellement compressés : {@code .tsv}, {@code .tsv.gz}, {@code .tsv.zst}, ou archive
+ * {@code .zip} (ou {@code .tsv.zip}) contenant un seul fichier.
+ * Les fichiers compressés sont décompressés à la volée pendant la lecture, sans fichier intermédiaire.
+ */
+public class KbartFiles {
+    public static final List<String> EXTENSIONS = List.of(".tsv", ".tsv.gz", ".tsv.zst", ".tsv.zip", ".zip");
+
+    /**
+     * Motif glob des fichiers kbart d'un répertoire
+     */
+    public static final String GLOB = "*.{tsv,tsv.gz,tsv.zst,zip}";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static boolean isKbart(String fileName) {
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        return EXTENSIONS.stream().anyMatch(lowerCase::endsWith);
+    }
+
+    public static boolean isCompressed(String fileName) {
+        return isKbart(fileName) && !fileName.toLowerCase(Locale.ROOT).endsWith(".tsv");
+    }
+
+    /**
+     * @return le nom du fichier tsv contenu dans le fichier compressé (PROVIDER_PACKAGE_2023-01-01.tsv pour
+     * PROVIDER_PACKAGE_2023-01-01.tsv.gz ou PROVIDER_PACKAGE_2023-01-01.zip), utilisé dans les clés des messages kafka
+     * et dans les logs
+     */
+    public static String tsvName(String fileName) {
+        if (!isCompressed(fileName)) {
+            return fileName;
+        }
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        int end = lowerCase.lastIndexOf('.');
+        String name = fileName.substring(0, end);
+        return lowerCase.substring(0, end).endsWith(".tsv") ? name : name + ".tsv";
+    }
+
+    /**
+     * @return le contenu décompressé du fichier
+     */
+    public static InputStream open(File file) throws IOException {
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            return openZipEntry(file);
+        }
+        return decompress(new FileInputStream(file), file.getName());
+    }
+
+    /**
+     * @return le contenu décompressé du fichier, lu directement depuis le disque pour un fichier non compressé
+     */
+    public static ReadableByteChannel openChannel(File file) throws IOException {
+        if (!isCompressed(file.getName())) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return channel(open(file));
+    }
+
+    /**
+     * Lecture d'une portion d'un fichier non compressé, pour un contrôle en parallèle par portions
+     *
+     * @param start position du premier octet de la portion
+     * @param end   position qui suit le dernier octet de la portion
+     */
+    public static ReadableByteChannel openChannel(File file, long start, long end) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        return new ReadableByteChannel() {
+            private long position = start;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int limit = dst.limit();
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), end - position));
+                try {
+                    int read = channel.read(dst, position);
+                    if (read > 0) {
+                        position += read;
+                    }
+                    return read;
+                } finally {
+                    dst.limit(limit);
+                }
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Découpage d'un fichier non compressé en portions de lignes entières de tailles voisines
+     *
+     * @param nbSplits nombre de portions souhaité
+     * @return les positions de début des portions suivies de la taille du fichier : la portion i va de splits[i] à
+     * splits[i + 1]. Il y a moins de portions que demandé si le fichier contient peu de lignes.
+     */
+    public static long[] splitLines(File file, int nbSplits) throws IOException {
+        long size = file.length();
+        List<Long> splits = new ArrayList<>();
+        splits.add(0L);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            for (int i = 1; i < nbSplits; i++) {
+                // la portion commence après la première fin de ligne qui suit la position visée
+                long position = Math.max(size * i / nbSplits, splits.get(splits.size() - 1));
+                long start = -1;
+                while (start < 0 && position < size) {
+                    buffer.clear();
+                    int read = channel.read(buffer, position);
+                    if (read <= 0) {
+                        break;
+                    }
+                    for (int j = 0; j < read; j++) {
+                        if (buffer.get(j) == '\n') {
+                            start = position + j + 1;
+                            break;
+                        }
+                    }
+                    position += read;
+                }
+                if (start < 0 || start >= size) {
+                    break;
+                }
+                if (start > splits.get(splits.size() - 1)) {
+                    splits.add(start);
+                }
+            }
+        }
+        splits.add(size);
+        return splits.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @param base    répertoire des fichiers kbart
+     * @param pattern sous-répertoire (tous ses fichiers kbart, compressés ou non) ou motif glob (ex : {@code BRILL_*.tsv}),
+     *                relatif au répertoire des fichiers kbart
+     * @return les chemins, relatifs au répertoire, des fichiers correspondant au motif
+     */
+    public static List<String> list(Path base, String pattern) throws IOException {
+        String glob = (pattern == null) ? "" : pattern;
+        if (glob.isEmpty() || Files.isDirectory(base.resolve(glob))) {
+            glob = glob.isEmpty() ? GLOB : glob.replaceAll("/+$", "") + "/" + GLOB;
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        try (Stream<Path> files = Files.walk(base)) {
+            return files.filter(Files::isRegularFile)
+                    .map(base::relativize)
+                    .filter(matcher::matches)
+                    .map(Path::toString)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Lecture d'un fichier reçu en flux (téléchargement en cours), décompressé à la volée selon l'extension de son nom
+     *
+     * @param in       contenu du fichier tel qu'il est reçu
+     * @param fileName nom du fichier
+     */
+    public static ReadableByteChannel openChannel(InputStream in, String fileName) throws IOException {
+        return channel(decompress(in, fileName));
+    }
+
+    private static InputStream decompress(InputStream in, String fileName) throws IOException {
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        if (lowerCase.endsWith(".gz")) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        if (lowerCase.endsWith(".zst")) {
+            return new ZstdInputStreamNoFinalizer(new BufferedInputStream(in, BUFFER_SIZE));
+        }
+        if (lowerCase.endsWith(".zip")) {
+            return openZipEntry(new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE)), fileName);
+        }
+        return in;
+    }
+
+    private static InputStream openZipEntry(File file) throws IOException {
+        ZipFile zip = new ZipFile(file);
+        try {
+            ZipEntry entry = null;
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry next = entries.nextElement();
+                if (next.isDirectory()) {
+                    continue;
+                }
+                if (entry != null) {
+                    throw new ZipException("L'archive " + file.getName() + " doit contenir un seul fichier");
+                }
+                entry = next;
+            }
+            if (entry == null) {
+                throw new ZipException("L'archive " + file.getName() + " est vide");
+            }
+            return new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        } catch (IOException | RuntimeException e) {
+            zip.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Archive zip lue en flux : le contenu du premier fichier, l'archive est refusée à la fin de sa lecture
+     * si elle contient un autre fichier
+     */
+    private static InputStream openZipEntry(ZipInputStream zip, String fileName) throws IOException {
+        ZipEntry entry;
+        do {
+            entry = zip.getNextEntry();
+        } while (entry != null && entry.isDirectory());
+        if (entry == null) {
+            zip.close();
+            throw new ZipException("L'archive " + fileName + " est vide");
+        }
+        return new FilterInputStream(zip) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read < 0) {
+                    ZipEntry next;
+                    do {
+                        next = zip.getNextEntry();
+                    } while (next != null && next.isDirectory());
+                    if (next != null) {
+                        throw new ZipException("L'archive " + fileName + " doit contenir un seul fichier");
+                    }
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Contrairement à {@link Channels#newChannel(InputStream)}, qui copie par blocs de 8 Ko, lit directement dans le
+     * tampon du {@link KbartTokenizer}
+     */
+    private static ReadableByteChannel channel(InputStream in) {
+        return new ReadableByteChannel() {
+            private boolean open = true;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (!dst.hasArray()) {
+                    throw new IllegalArgumentException("Seuls les tampons adossés à un tableau sont acceptés");
+                }
+                int read = in.read(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                if (read > 0) {
+                    dst.position(dst.position() + read);
+                }
+                return read;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return open;
+            }
+
+            @Override
+            public void close() throws IOException {
+                open = false;
+                in.close();
+            }
+        };
+    }
+}
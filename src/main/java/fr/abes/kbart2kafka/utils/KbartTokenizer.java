@@ -0,0 +1,265 @@
+package fr.abes.kbart2kafka.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Découpage d'un fichier kbart ligne par ligne et colonne par colonne directement sur les octets lus.
+ * Les colonnes de la ligne courante sont exposées sous forme de positions dans un tampon réutilisé d'une ligne
+ * à l'autre : aucune chaîne de caractères n'est créée tant que {@link #field(int)} n'est pas appelé.
+ * Comme pour {@code String.split("\t")}, les colonnes vides en fin de ligne ne sont pas comptées.
+ * Les fins de ligne {@code \n} et {@code \r\n} sont acceptées, le BOM UTF-8 éventuel en début de fichier est ignoré.
+ */
+public class KbartTokenizer implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final byte TAB = '\t';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final ReadableByteChannel channel;
+    private byte[] buffer;
+    private ByteBuffer byteBuffer;
+    // début des données non consommées, fin des données lues, position à partir de laquelle chercher une fin de ligne
+    private int position;
+    private int limit;
+    private int scanFrom;
+    private boolean eof;
+    // octets du flux retirés du tampon
+    private long discarded;
+
+    private int lineStart;
+    private int lineEnd;
+    private int lineNumber;
+    private int[] fieldStarts = new int[32];
+    private int[] fieldEnds = new int[32];
+    private int rawFieldCount;
+    private int fieldCount;
+
+    public KbartTokenizer(ReadableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public KbartTokenizer(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.byteBuffer = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * @param file fichier kbart, décompressé à la volée s'il est compressé (voir {@link KbartFiles})
+     */
+    public static KbartTokenizer open(File file) throws IOException {
+        return new KbartTokenizer(KbartFiles.openChannel(file));
+    }
+
+    /**
+     * Passe à la ligne suivante
+     *
+     * @return false si la fin du fichier est atteinte
+     * @throws IOException impossible de lire le fichier
+     */
+    public boolean nextLine() throws IOException {
+        int newLine;
+        while ((newLine = indexOfLineFeed()) < 0) {
+            if (eof) {
+                if (position >= limit) {
+                    return false;
+                }
+                newLine = limit;
+                break;
+            }
+            fill();
+        }
+        lineStart = position;
+        lineEnd = (newLine > lineStart && buffer[newLine - 1] == CR) ? newLine - 1 : newLine;
+        position = Math.min(newLine + 1, limit);
+        scanFrom = position;
+        if (lineNumber++ == 0) {
+            skipBom();
+        }
+        tokenize();
+        return true;
+    }
+
+    /**
+     * @return numéro de la ligne courante dans le fichier (l'entête est la ligne 1)
+     */
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * @return position du premier octet de la ligne courante dans le flux lu (contenu décompressé pour un fichier compressé)
+     */
+    public long getLinePosition() {
+        return discarded + lineStart;
+    }
+
+    /**
+     * @return le nombre de colonnes de la ligne courante, selon la même règle que {@code String.split("\t").length}
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return true si la ligne courante contient au moins une tabulation
+     */
+    public boolean hasTabulation() {
+        return rawFieldCount > 1;
+    }
+
+    public boolean isBlank() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (!Character.isWhitespace(buffer[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isFieldEmpty(int index) {
+        return index >= fieldCount || fieldStarts[index] == fieldEnds[index];
+    }
+
+    public int fieldLength(int index) {
+        return index >= fieldCount ? 0 : fieldEnds[index] - fieldStarts[index];
+    }
+
+    public int fieldOffset(int index) {
+        return index >= fieldCount ? lineStart : fieldStarts[index];
+    }
+
+    /**
+     * @return position dans le tampon du premier octet de la ligne courante, fin de ligne exclue
+     */
+    public int lineOffset() {
+        return lineStart;
+    }
+
+    public int lineLength() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * Accès direct au tampon : les octets de la colonne i sont entre {@link #fieldOffset(int)} et
+     * {@link #fieldOffset(int)} + {@link #fieldLength(int)}. Le contenu n'est valide que jusqu'au prochain {@link #nextLine()}.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * Compare le contenu d'une colonne avec une valeur encodée en UTF-8, sans créer de chaîne de caractères
+     */
+    public boolean fieldEquals(int index, byte[] expected) {
+        int length = fieldLength(index);
+        if (length != expected.length) {
+            return false;
+        }
+        int start = fieldStarts[index];
+        return Arrays.equals(buffer, start, start + length, expected, 0, length);
+    }
+
+    public String field(int index) {
+        if (index >= fieldCount) {
+            return "";
+        }
+        return new String(buffer, fieldStarts[index], fieldEnds[index] - fieldStarts[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return les colonnes de la ligne courante, identiques au résultat de {@code line().split("\t")}
+     */
+    public String[] fields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = field(i);
+        }
+        return fields;
+    }
+
+    public String line() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int indexOfLineFeed() {
+        for (int i = scanFrom; i < limit; i++) {
+            if (buffer[i] == LF) {
+                return i;
+            }
+        }
+        scanFrom = limit;
+        return -1;
+    }
+
+    private void fill() throws IOException {
+        if (position > 0) {
+            int remaining = limit - position;
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            discarded += position;
+            scanFrom -= position;
+            limit = remaining;
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            // ligne plus longue que le tampon
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            byteBuffer = ByteBuffer.wrap(buffer);
+        }
+        byteBuffer.limit(buffer.length).position(limit);
+        int read = channel.read(byteBuffer);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private void skipBom() {
+        if (lineEnd - lineStart >= 3 && buffer[lineStart] == (byte) 0xEF && buffer[lineStart + 1] == (byte) 0xBB && buffer[lineStart + 2] == (byte) 0xBF) {
+            lineStart += 3;
+        }
+    }
+
+    private void tokenize() {
+        int count = 0;
+        int start = lineStart;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer[i] == TAB) {
+                addField(count++, start, i);
+                start = i + 1;
+            }
+        }
+        addField(count++, start, lineEnd);
+        rawFieldCount = count;
+        if (lineStart == lineEnd) {
+            // comme String.split, une ligne vide contient une colonne vide
+            fieldCount = 1;
+            return;
+        }
+        while (count > 0 && fieldStarts[count - 1] == fieldEnds[count - 1]) {
+            count--;
+        }
+        fieldCount = count;
+    }
+
+    private void addField(int index, int start, int end) {
+        if (index == fieldStarts.length) {
+            fieldStarts = Arrays.copyOf(fieldStarts, index * 2);
+            fieldEnds = Arrays.copyOf(fieldEnds, index * 2);
+        }
+        fieldStarts[index] = start;
+        fieldEnds[index] = end;
+    }
+}
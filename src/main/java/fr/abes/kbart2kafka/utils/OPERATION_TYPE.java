@@ -0,0 +1,5 @@
+package fr.abes.kbart2kafka.utils;
+
+public enum OPERATION_TYPE {
+    ADD, UPDATE, DELETE
+}
@@ -0,0 +1,5 @@
+package fr.abes.kbart2kafka.utils;
+
+public enum PARTITIONING_STRATEGY {
+    round_robin, package_hash, identifier_hash, sticky
+}
@@ -0,0 +1,5 @@
+package fr.abes.kbart2kafka.utils;
+
+public enum SERIALIZATION_FORMAT {
+    json, avro
+}
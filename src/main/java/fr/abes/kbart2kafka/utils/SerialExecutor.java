@@ -0,0 +1,60 @@
+package fr.abes.kbart2kafka.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Exécute les tâches qui lui sont confiées une à une, dans l'ordre où elles ont été confiées, sur les threads d'un
+ * exécuteur partagé. Aucun thread n'est réservé : tant que la file est vide, l'exécuteur partagé n'est pas sollicité.
+ * Les tâches traitent elles-mêmes leurs erreurs : une exception interromprait l'exécution des tâches suivantes.
+ * Les tâches sont confiées par un seul thread. Une tâche refusée par l'exécuteur partagé (arrêt de l'application)
+ * l'est aussi par {@link #execute}.
+ */
+public class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Runnable drain = this::drain;
+    // une seule exécution de drain à la fois : c'est elle qui garantit l'ordre
+    private boolean scheduled;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (tasks) {
+            tasks.add(task);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException e) {
+            // aucune exécution de drain en cours et un seul thread appelant : la file ne contient que cette tâche
+            synchronized (tasks) {
+                tasks.clear();
+                scheduled = false;
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (tasks) {
+                task = tasks.poll();
+                if (task == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package fr.abes.kbart2kafka.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Contrôle de l'encodage UTF-8 directement sur les octets lus, sans décodage en chaîne de caractères.
+ * Les octets ASCII, qui forment l'essentiel d'un fichier kbart, sont contrôlés 8 par 8. Les séquences de plusieurs
+ * octets sont contrôlées selon la table 3-7 de la norme Unicode (pas de forme non minimale, de demi-code d'indirection
+ * ni de valeur au-delà de U+10FFFF).
+ * Le caractère de remplacement U+FFFD est également refusé : il trahit un fichier déjà décodé avec un mauvais encodage.
+ */
+public class Utf8Validator {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long NON_ASCII = 0x8080808080808080L;
+
+    private Utf8Validator() {
+    }
+
+    /**
+     * @param buffer octets à contrôler
+     * @param from   position du premier octet
+     * @param to     position qui suit le dernier octet : une séquence interrompue par cette limite est incorrecte
+     * @return la position du premier octet de la première séquence incorrecte, -1 si tous les octets sont corrects
+     */
+    public static int indexOfInvalid(byte[] buffer, int from, int to) {
+        int i = from;
+        while (i < to) {
+            while (i + Long.BYTES <= to && ((long) LONGS.get(buffer, i) & NON_ASCII) == 0) {
+                i += Long.BYTES;
+            }
+            while (i < to && buffer[i] >= 0) {
+                i++;
+            }
+            if (i == to) {
+                return -1;
+            }
+            int length = sequence(buffer, i, to);
+            if (length < 0) {
+                return i;
+            }
+            i += length;
+        }
+        return -1;
+    }
+
+    /**
+     * @param index position d'une séquence incorrecte, renvoyée par {@link #indexOfInvalid(byte[], int, int)}
+     * @return le nombre d'octets de la séquence incorrecte : l'octet de tête et ceux qui suivent tant qu'ils forment
+     * le début d'une séquence correcte
+     */
+    public static int invalidLength(byte[] buffer, int index, int to) {
+        int length = sequence(buffer, index, to);
+        return length < 0 ? -length : 0;
+    }
+
+    /**
+     * @return la longueur de la séquence qui commence à la position i, ou l'opposé de la longueur de la partie
+     * incorrecte
+     */
+    private static int sequence(byte[] buffer, int i, int to) {
+        int lead = buffer[i] & 0xff;
+        if (lead < 0x80) {
+            return 1;
+        }
+        int length;
+        int min = 0x80;
+        int max = 0xBF;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            length = 2;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            length = 3;
+            if (lead == 0xE0) {
+                min = 0xA0;
+            } else if (lead == 0xED) {
+                max = 0x9F;
+            }
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            length = 4;
+            if (lead == 0xF0) {
+                min = 0x90;
+            } else if (lead == 0xF4) {
+                max = 0x8F;
+            }
+        } else {
+            return -1;
+        }
+        for (int k = 1; k < length; k++) {
+            if (i + k >= to) {
+                return -k;
+            }
+            int b = buffer[i + k] & 0xff;
+            if (b < min || b > max) {
+                return -k;
+            }
+            // seul le deuxième octet a des bornes particulières
+            min = 0x80;
+            max = 0xBF;
+        }
+        if (lead == 0xEF && (buffer[i + 1] & 0xff) == 0xBF && (buffer[i + 2] & 0xff) == 0xBD) {
+            return -3;
+        }
+        return length;
+    }
+}
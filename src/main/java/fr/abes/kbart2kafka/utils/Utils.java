@@ -7,12 +7,14 @@ import fr.abes.kbart2kafka.exception.IllegalProviderException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.FileSystems;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Date;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class Utils {
+    private static final Pattern DATE_FILENAME_PATTERN = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})");
 
     public static String extractDomainFromUrl(String url) throws URISyntaxException {
         URI uri = new URI(url);
@@ -47,12 +49,23 @@ public class Utils {
         }
     }
 
+    /**
+     * @return provider et package du fichier séparés par "_", ou le nom du fichier s'il n'est pas au format attendu
+     */
+    public static String extractPackageKey(String filename) {
+        try {
+            return extractProvider(filename) + "_" + extractPackageName(filename);
+        } catch (IllegalProviderException | IllegalPackageException e) {
+            return filename;
+        }
+    }
+
     public static Date extractDateFilename(String filename) throws IllegalDateException {
         Date date = new Date();
         try {
-            Matcher matcher = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})", Pattern.CASE_INSENSITIVE).matcher(filename);
+            Matcher matcher = DATE_FILENAME_PATTERN.matcher(filename);
             if (matcher.find()) {
-                date = new SimpleDateFormat("yyyy-MM-dd").parse(matcher.group(1));
+                date = Date.from(LocalDate.parse(matcher.group(1)).atStartOfDay(ZoneId.systemDefault()).toInstant());
             }
             return date;
         } catch (Exception e) {
@@ -60,22 +73,12 @@ public class Utils {
         }
     }
 
+    /**
+     * Normalisation d'une date kbart au format YYYY-MM-DD
+     * @see KbartDateNormalizer#normalize(String)
+     */
     public static String reformatDateKbart(String dateToFormat) throws IllegalDateException {
-        if (dateToFormat == null || dateToFormat.isEmpty())
-            return "";
-        Matcher matcher = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
-        if (matcher.find()) {
-            return dateToFormat;
-        }
-        matcher = Pattern.compile("(\\d{4}-\\d{2})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
-        if (matcher.find()) {
-            return dateToFormat + "-01";
-        }
-        matcher = Pattern.compile("(\\d{4})", Pattern.CASE_INSENSITIVE).matcher(dateToFormat);
-        if (matcher.find()) {
-            return dateToFormat + "-01-01";
-        }
-        throw new IllegalDateException("Format de date non reconnu, la date doit être au format YYYY ou YYYY-MM ou YYYY-MM-DD");
+        return KbartDateNormalizer.normalize(dateToFormat);
     }
 
     public static String extractFilename(String path) {
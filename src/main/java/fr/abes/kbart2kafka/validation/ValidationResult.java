@@ -0,0 +1,30 @@
+package fr.abes.kbart2kafka.validation;
+
+import fr.abes.kbart2kafka.job.ValidationReport;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Résultat du contrôle à blanc d'un fichier kbart : aucune ligne n'est envoyée dans kafka
+ */
+@Data
+@NoArgsConstructor
+public class ValidationResult {
+    private String fileName;
+    private boolean valid;
+    /**
+     * cause du refus du fichier, null s'il est valide
+     */
+    private String message;
+    private ValidationStatistics statistics;
+    private ValidationReport report;
+    /**
+     * nombre de portions du fichier contrôlées en parallèle
+     */
+    private int nbSplits;
+    private long durationMs;
+
+    public ValidationResult(String fileName) {
+        this.fileName = fileName;
+    }
+}
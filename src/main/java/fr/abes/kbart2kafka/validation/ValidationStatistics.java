@@ -0,0 +1,100 @@
+package fr.abes.kbart2kafka.validation;
+
+import fr.abes.kbart2kafka.utils.DATE_FORMAT;
+import fr.abes.kbart2kafka.utils.KBART_COLUMN;
+import fr.abes.kbart2kafka.utils.KbartColumns;
+import fr.abes.kbart2kafka.utils.KbartDateNormalizer;
+import fr.abes.kbart2kafka.utils.KbartTokenizer;
+import fr.abes.kbart2kafka.utils.PUBLICATION_TYPE;
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistiques des lignes d'un fichier kbart collectées pendant son contrôle : répartition du nombre de colonnes,
+ * des types de publication et des formats de date, lignes sans identifiant.
+ * Calculées sur les octets de la ligne, sans créer de chaîne de caractères hors valeurs inattendues.
+ * Un fichier contrôlé par portions en parallèle a des statistiques par portion, réunies par {@link #merge}.
+ */
+@Getter
+public class ValidationStatistics {
+    private static final KBART_COLUMN[] DATE_COLUMNS = {KBART_COLUMN.date_first_issue_online, KBART_COLUMN.date_last_issue_online,
+            KBART_COLUMN.date_monograph_published_print, KBART_COLUMN.date_monograph_published_online};
+    private static final byte[] MONOGRAPH = PUBLICATION_TYPE.monograph.name().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SERIAL = PUBLICATION_TYPE.serial.name().getBytes(StandardCharsets.UTF_8);
+    // au delà, les valeurs inattendues de publication_type sont regroupées
+    private static final int MAX_PUBLICATION_TYPES = 20;
+    private static final String OTHER_PUBLICATION_TYPES = "(autres)";
+
+    private long lines;
+    private long emptyPrintIdentifiers;
+    private long emptyOnlineIdentifiers;
+    /**
+     * lignes sans print_identifier ni online_identifier
+     */
+    private long emptyIdentifiers;
+    private final Map<Integer, Long> columnCounts = new TreeMap<>();
+    private final Map<String, Long> publicationTypes = new TreeMap<>();
+    private final Map<String, Map<DATE_FORMAT, Long>> dateFormats = new LinkedHashMap<>();
+
+    public ValidationStatistics() {
+        for (KBART_COLUMN column : DATE_COLUMNS) {
+            dateFormats.put(column.name(), new EnumMap<>(DATE_FORMAT.class));
+        }
+    }
+
+    public void add(KbartTokenizer line, KbartColumns columns) {
+        lines++;
+        columnCounts.merge(line.fieldCount(), 1L, Long::sum);
+        publicationTypes.merge(publicationType(line, columns.index(KBART_COLUMN.publication_type)), 1L, Long::sum);
+        for (KBART_COLUMN column : DATE_COLUMNS) {
+            int index = columns.index(column);
+            DATE_FORMAT format = KbartDateNormalizer.detect(line.buffer(), line.fieldOffset(index), line.fieldLength(index));
+            dateFormats.get(column.name()).merge(format, 1L, Long::sum);
+        }
+        boolean noPrintIdentifier = line.isFieldEmpty(columns.index(KBART_COLUMN.print_identifier));
+        boolean noOnlineIdentifier = line.isFieldEmpty(columns.index(KBART_COLUMN.online_identifier));
+        if (noPrintIdentifier) {
+            emptyPrintIdentifiers++;
+        }
+        if (noOnlineIdentifier) {
+            emptyOnlineIdentifiers++;
+        }
+        if (noPrintIdentifier && noOnlineIdentifier) {
+            emptyIdentifiers++;
+        }
+    }
+
+    public void merge(ValidationStatistics other) {
+        lines += other.lines;
+        emptyPrintIdentifiers += other.emptyPrintIdentifiers;
+        emptyOnlineIdentifiers += other.emptyOnlineIdentifiers;
+        emptyIdentifiers += other.emptyIdentifiers;
+        other.columnCounts.forEach((count, nb) -> columnCounts.merge(count, nb, Long::sum));
+        other.publicationTypes.forEach((type, nb) -> publicationTypes.merge(
+                publicationTypes.containsKey(type) || publicationTypes.size() < MAX_PUBLICATION_TYPES ? type : OTHER_PUBLICATION_TYPES, nb, Long::sum));
+        other.dateFormats.forEach((column, formats) -> formats.forEach((format, nb) -> dateFormats.get(column).merge(format, nb, Long::sum)));
+    }
+
+    /**
+     * @return part des lignes sans print_identifier ni online_identifier
+     */
+    public double getEmptyIdentifierRate() {
+        return lines == 0 ? 0 : (double) emptyIdentifiers / lines;
+    }
+
+    private String publicationType(KbartTokenizer line, int index) {
+        if (line.fieldEquals(index, SERIAL)) {
+            return PUBLICATION_TYPE.serial.name();
+        }
+        if (line.fieldEquals(index, MONOGRAPH)) {
+            return PUBLICATION_TYPE.monograph.name();
+        }
+        String type = line.field(index);
+        return publicationTypes.containsKey(type) || publicationTypes.size() < MAX_PUBLICATION_TYPES ? type : OTHER_PUBLICATION_TYPES;
+    }
+}
@@ -0,0 +1,102 @@
+package fr.abes.kbart2kafka.controller;
+
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.service.BatchService;
+import fr.abes.kbart2kafka.service.JobService;
+import fr.abes.kbart2kafka.service.ValidationService;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(KbartController.class)
+@TestPropertySource(properties = "abes.pathToKbart=target/download/")
+class KbartControllerTest {
+    private static final String CONTENU = "publication_title\tprint_identifier\nTitre\t0001-4842\n";
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @MockBean
+    JobService jobService;
+
+    @MockBean
+    BatchService batchService;
+
+    @MockBean
+    ValidationService validationService;
+
+    @BeforeEach
+    void init() throws Exception {
+        FileUtils.writeStringToFile(new File("target/download/PROVIDER_PACKAGE_2023-01-01.tsv"), CONTENU, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testDownload() throws Exception {
+        mockMvc.perform(get("/api/v1/file/PROVIDER_PACKAGE_2023-01-01.tsv"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andExpect(content().string(CONTENU));
+    }
+
+    @Test
+    void testDownloadRange() throws Exception {
+        mockMvc.perform(get("/api/v1/file/PROVIDER_PACKAGE_2023-01-01.tsv").header(HttpHeaders.RANGE, "bytes=35-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string(CONTENU.substring(35)));
+    }
+
+    @Test
+    void testDownloadNonModifie() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/v1/file/PROVIDER_PACKAGE_2023-01-01.tsv")).andReturn();
+        String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        mockMvc.perform(get("/api/v1/file/PROVIDER_PACKAGE_2023-01-01.tsv").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void testRapport() throws Exception {
+        Job job = new Job("PROVIDER_PACKAGE_2023-01-01.tsv");
+        Mockito.when(jobService.getJob(job.getId())).thenReturn(Optional.of(job));
+        // contrôle des lignes non terminé
+        mockMvc.perform(get("/api/v1/jobs/{id}/report", job.getId()))
+                .andExpect(status().isNotFound());
+
+        ValidationReport report = new ValidationReport(job.getFileName(), 20, 5, 20);
+        report.add("IllegalDateException", "Format de date non reconnu", "date_first_issue_online", 2, "10/01/1996");
+        report.add("IllegalDateException", "Format de date non reconnu", "date_first_issue_online", 3, "janvier");
+        job.setReport(report);
+        mockMvc.perform(get("/api/v1/jobs/{id}/report", job.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.errors").value(2))
+                .andExpect(jsonPath("$.entries[0].column").value("date_first_issue_online"))
+                .andExpect(jsonPath("$.entries[0].lines[0]").value("2-3"))
+                .andExpect(jsonPath("$.entries[0].samples[1].value").value("janvier"));
+    }
+
+    @Test
+    void testDownloadHorsRepertoire() throws Exception {
+        mockMvc.perform(get("/api/v1/file/{filename}", "../pom.xml"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,42 @@
+package fr.abes.kbart2kafka.partition;
+
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+@SpringBootTest(classes = {PartitionStrategies.class}, properties = {"abes.kafka.partitioning.default=identifier_hash", "abes.kafka.partitioning.sticky.topic=sticky", "abes.kafka.partitioning.stickyBatchSize=2"})
+class PartitionStrategiesTest {
+    @Autowired
+    PartitionStrategies partitionStrategies;
+
+    @Test
+    void strategieParTopic() {
+        Assertions.assertInstanceOf(IdentifierHashPartitionStrategy.class, partitionStrategies.forTopic("bacon.kbart.toload"));
+        Assertions.assertInstanceOf(StickyPartitionStrategy.class, partitionStrategies.forTopic("sticky.topic"));
+    }
+
+    @Test
+    void memeIdentifiantMemePartition() {
+        PartitionStrategy strategy = partitionStrategies.forTopic("bacon.kbart.toload");
+        LigneKbartDto ligne1 = new LigneKbartDto();
+        ligne1.setOnline_identifier("1234-5678");
+        ligne1.setPrint_identifier("0000-0000");
+        LigneKbartDto ligne2 = new LigneKbartDto();
+        ligne2.setOnline_identifier("1234-5678");
+        Assertions.assertEquals(strategy.partition("A_B", ligne1, 12), strategy.partition("C_D", ligne2, 12));
+        Assertions.assertEquals(PartitionStrategy.hash("1234-5678", 12), strategy.partition("A_B", ligne1, 12));
+    }
+
+    @Test
+    void stickyParLot() {
+        PartitionStrategy strategy = partitionStrategies.forTopic("sticky.topic");
+        LigneKbartDto ligne = new LigneKbartDto();
+        int[] partitions = new int[6];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = strategy.partition("A_B", ligne, 2);
+        }
+        Assertions.assertArrayEquals(new int[]{0, 0, 1, 1, 0, 0}, partitions);
+    }
+}
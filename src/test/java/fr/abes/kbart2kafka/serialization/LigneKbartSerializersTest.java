@@ -0,0 +1,64 @@
+package fr.abes.kbart2kafka.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.dto.LigneKbartDto;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.message.BinaryMessageDecoder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class LigneKbartSerializersTest {
+
+    private LigneKbartDto ligne() {
+        LigneKbartDto ligne = new LigneKbartDto();
+        ligne.setNbCurrentLines(3);
+        ligne.setNbLinesTotal(10);
+        ligne.setPublication_title("Études littéraires");
+        ligne.setPrint_identifier("0001-4842");
+        ligne.setOnline_identifier("1520-4898");
+        ligne.setPublication_type("serial");
+        ligne.setDate_first_issue_online("1996-01-01");
+        return ligne;
+    }
+
+    @Test
+    void choixDuFormatParTopic() {
+        MockEnvironment environment = new MockEnvironment().withProperty("abes.kafka.serialization.bacon.kbart.toload", "avro");
+        LigneKbartSerializers serializers = new LigneKbartSerializers(environment, new ObjectMapper());
+        Assertions.assertInstanceOf(AvroLigneKbartSerializer.class, serializers.forTopic("bacon.kbart.toload"));
+        Assertions.assertInstanceOf(JsonLigneKbartSerializer.class, serializers.forTopic("autre.topic"));
+
+        environment.setProperty("abes.kafka.serialization.autre.topic", "xml");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> serializers.forTopic("autre.topic"));
+    }
+
+    @Test
+    void serialisationJson() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        LigneKbartDto ligne = ligne();
+        Assertions.assertArrayEquals(mapper.writeValueAsString(ligne).getBytes(StandardCharsets.UTF_8), new JsonLigneKbartSerializer(mapper).serialize(ligne));
+    }
+
+    @Test
+    void serialisationAvroLisibleAvecLeSchema() throws IOException {
+        AvroLigneKbartSerializer serializer = new AvroLigneKbartSerializer();
+        LigneKbartDto ligne = ligne();
+        byte[] message = serializer.serialize(ligne);
+
+        BinaryMessageDecoder<GenericRecord> decoder = new BinaryMessageDecoder<>(GenericData.get(), serializer.getSchema());
+        GenericRecord record = decoder.decode(message);
+        Assertions.assertEquals(3, record.get("nbCurrentLines"));
+        Assertions.assertEquals(10, record.get("nbLinesTotal"));
+        Assertions.assertEquals("Études littéraires", record.get("publication_title").toString());
+        Assertions.assertEquals("1520-4898", record.get("online_identifier").toString());
+        Assertions.assertEquals("1996-01-01", record.get("date_first_issue_online").toString());
+        Assertions.assertNull(record.get("bestPpn"));
+        // une seconde sérialisation réutilise l'encodeur du thread
+        Assertions.assertArrayEquals(message, serializer.serialize(ligne));
+    }
+}
@@ -0,0 +1,54 @@
+package fr.abes.kbart2kafka.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.util.List;
+import java.util.Map;
+
+@SpringBootTest(classes = {BatchService.class}, properties = {"abes.pathToKbart=/tmp/", "abes.batch.maxParallelFiles=2"})
+class BatchServiceTest {
+    @Autowired
+    BatchService batchService;
+
+    @MockBean
+    JobService jobService;
+
+    @MockBean
+    ProviderPackageService providerPackageService;
+
+    @Test
+    void planOrdonneParPackageEtDate() {
+        List<List<String>> lanes = batchService.plan(List.of(
+                "BRILL_GLOBAL_JOURNALS_2024-03-01.tsv",
+                "SPRINGER_GLOBAL_BOOKS_2024-01-01.tsv",
+                "BRILL_GLOBAL_JOURNALS_2023-12-01_FORCE.tsv",
+                "BRILL_GLOBAL_JOURNALS_2024-01-15.tsv",
+                "EMERALD_GLOBAL_JOURNALS_2024-01-01.tsv"));
+        Assertions.assertEquals(2, lanes.size());
+        Assertions.assertEquals(List.of("BRILL_GLOBAL_JOURNALS_2023-12-01_FORCE.tsv", "BRILL_GLOBAL_JOURNALS_2024-01-15.tsv", "BRILL_GLOBAL_JOURNALS_2024-03-01.tsv"), lanes.get(0));
+        Assertions.assertEquals(List.of("EMERALD_GLOBAL_JOURNALS_2024-01-01.tsv", "SPRINGER_GLOBAL_BOOKS_2024-01-01.tsv"), lanes.get(1));
+    }
+
+    @Test
+    void fichierPerimeRefuse() {
+        Mockito.when(providerPackageService.hasMoreRecentPackageInBdd(ArgumentMatchers.anyCollection())).thenReturn(Map.of(
+                "BRILL_GLOBAL_JOURNALS_2024-01-15.tsv", true,
+                "BRILL_GLOBAL_JOURNALS_2024-03-01.tsv", false));
+
+        batchService.submitFiles(List.of("BRILL_GLOBAL_JOURNALS_2024-03-01.tsv", "BRILL_GLOBAL_JOURNALS_2024-01-15.tsv"));
+
+        Mockito.verify(jobService).refuse("BRILL_GLOBAL_JOURNALS_2024-01-15.tsv", JobService.MORE_RECENT_PACKAGE);
+        Mockito.verify(jobService).submitSequence(List.of("BRILL_GLOBAL_JOURNALS_2024-03-01.tsv"));
+    }
+
+    @Test
+    void planSansFichier() {
+        Assertions.assertTrue(batchService.plan(List.of()).isEmpty());
+    }
+}
@@ -0,0 +1,196 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.delta.DeltaPlan;
+import fr.abes.kbart2kafka.delta.FingerprintIndex;
+import fr.abes.kbart2kafka.utils.KBART_COLUMN;
+import fr.abes.kbart2kafka.utils.OPERATION_TYPE;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+@SpringBootTest(classes = {DeltaService.class}, properties = {"abes.delta.enabled=true", "abes.delta.indexPath=target/delta-index/"})
+class DeltaServiceTest {
+    private static final String HEADER = String.join("\t", Arrays.stream(KBART_COLUMN.values()).limit(25).map(Enum::name).toList());
+
+    @Autowired
+    DeltaService deltaService;
+
+    @BeforeEach
+    void clean() throws IOException {
+        FileUtils.deleteDirectory(new File("target/delta-index"));
+    }
+
+    @Test
+    void deltaAvecLeFichierPrecedent() throws IOException {
+        File v1 = write("PROVIDER_GLOBAL_PACKAGE_2024-01-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2"),
+                line("Titre 3", "3333-3333", "2003", "id3")));
+        DeltaPlan plan1 = deltaService.computeDelta(v1);
+        Assertions.assertTrue(plan1.isFull());
+        Assertions.assertEquals(3, plan1.size(3));
+        deltaService.saveIndex(v1, plan1);
+
+        File v2 = write("PROVIDER_GLOBAL_PACKAGE_2024-02-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2 modifié", "2222-2222", "2002", "id2"),
+                line("Titre 4", "4444-4444", "2004", "id4")));
+        DeltaPlan plan2 = deltaService.computeDelta(v2);
+        Assertions.assertFalse(plan2.isFull());
+        Assertions.assertNull(plan2.operation(2));
+        Assertions.assertEquals(OPERATION_TYPE.UPDATE, plan2.operation(3));
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan2.operation(4));
+        Assertions.assertEquals(1, plan2.getDeletedKeys().size());
+        Assertions.assertEquals("3333-3333", FingerprintIndex.fieldsOf(plan2.getDeletedKeys().get(0))[2]);
+        Assertions.assertEquals(3, plan2.size(3));
+    }
+
+    @Test
+    void premierChargement() throws IOException {
+        File v1 = write("PROVIDER_GLOBAL_PREMIER_2024-01-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2")));
+        DeltaPlan plan = deltaService.computeDelta(v1);
+        Assertions.assertTrue(plan.isFull());
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(2));
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(3));
+        Assertions.assertTrue(plan.getDeletedKeys().isEmpty());
+        Assertions.assertFalse(new File("target/delta-index/PROVIDER_GLOBAL_PREMIER.idx").exists());
+        deltaService.saveIndex(v1, plan);
+        Assertions.assertTrue(new File("target/delta-index/PROVIDER_GLOBAL_PREMIER.idx").exists());
+    }
+
+    @Test
+    void fichierForce() throws IOException {
+        File v1 = write("PROVIDER_GLOBAL_REPRISE_2024-01-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2")));
+        deltaService.saveIndex(v1, deltaService.computeDelta(v1));
+
+        // un fichier _FORCE est envoyé en entier, sans message de suppression, et devient la référence du package
+        File force = write("PROVIDER_GLOBAL_REPRISE_2024-01-01_FORCE.tsv", List.of(line("Titre 1", "1111-1111", "2001", "id1")));
+        DeltaPlan plan = deltaService.computeDelta(force);
+        Assertions.assertTrue(plan.isFull());
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(2));
+        Assertions.assertTrue(plan.getDeletedKeys().isEmpty());
+        deltaService.saveIndex(force, plan);
+
+        File v2 = write("PROVIDER_GLOBAL_REPRISE_2024-02-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2")));
+        DeltaPlan plan2 = deltaService.computeDelta(v2);
+        Assertions.assertNull(plan2.operation(2));
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan2.operation(3));
+    }
+
+    @Test
+    void clesEnDouble() throws IOException {
+        File v1 = write("PROVIDER_GLOBAL_DOUBLE_2024-01-01.tsv", List.of(line("Titre 1", "1111-1111", "2001", "id1")));
+        deltaService.saveIndex(v1, deltaService.computeDelta(v1));
+
+        // toutes les occurrences d'une clé en double sont envoyées, y compris la première, inchangée
+        File v2 = write("PROVIDER_GLOBAL_DOUBLE_2024-02-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2"),
+                line("Titre 1 bis", "1111-1111", "2001", "id1"),
+                line("Titre 3", "3333-3333", "2003", "id3"),
+                line("Titre 3 bis", "3333-3333", "2003", "id3")));
+        DeltaPlan plan = deltaService.computeDelta(v2);
+        Assertions.assertEquals(OPERATION_TYPE.UPDATE, plan.operation(2));
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(3));
+        Assertions.assertEquals(OPERATION_TYPE.UPDATE, plan.operation(4));
+        // clé nouvelle en double : chaque occurrence est un ajout
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(5));
+        Assertions.assertEquals(OPERATION_TYPE.ADD, plan.operation(6));
+        Assertions.assertTrue(plan.getDeletedKeys().isEmpty());
+        Assertions.assertEquals(5, plan.size(5));
+        deltaService.saveIndex(v2, plan);
+
+        // le même fichier rechargé : les clés en double sont de nouveau envoyées, les autres lignes ne le sont pas
+        File v3 = write("PROVIDER_GLOBAL_DOUBLE_2024-03-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2"),
+                line("Titre 1 bis", "1111-1111", "2001", "id1"),
+                line("Titre 3", "3333-3333", "2003", "id3"),
+                line("Titre 3 bis", "3333-3333", "2003", "id3")));
+        plan = deltaService.computeDelta(v3);
+        Assertions.assertNull(plan.operation(3));
+        Assertions.assertEquals(4, plan.size(5));
+        deltaService.saveIndex(v3, plan);
+
+        // la clé n'est plus en double : sa ligne restante diffère de l'ensemble des occurrences précédentes
+        File v4 = write("PROVIDER_GLOBAL_DOUBLE_2024-04-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2")));
+        plan = deltaService.computeDelta(v4);
+        Assertions.assertEquals(OPERATION_TYPE.UPDATE, plan.operation(2));
+        Assertions.assertNull(plan.operation(3));
+        Assertions.assertEquals(1, plan.getDeletedKeys().size());
+    }
+
+    @Test
+    void suppressions() throws IOException {
+        File v1 = write("PROVIDER_GLOBAL_SUPPR_2024-01-01.tsv", List.of(
+                line("Titre 1", "1111-1111", "2001", "id1"),
+                line("Titre 2", "2222-2222", "2002", "id2"),
+                line("Titre 3", "", "2003", "")));
+        deltaService.saveIndex(v1, deltaService.computeDelta(v1));
+
+        File v2 = write("PROVIDER_GLOBAL_SUPPR_2024-02-01.tsv", List.of(line("Titre 1", "1111-1111", "2001", "id1")));
+        DeltaPlan plan = deltaService.computeDelta(v2);
+        Assertions.assertNull(plan.operation(2));
+        Assertions.assertEquals(2, plan.getDeletedKeys().size());
+        Assertions.assertEquals(2, plan.size(1));
+        // les colonnes d'identification des lignes supprimées sont reconstituées à partir des clés
+        List<String[]> deleted = plan.getDeletedKeys().stream().map(FingerprintIndex::fieldsOf).toList();
+        Assertions.assertTrue(deleted.stream().anyMatch(fields -> fields[2].equals("2222-2222") && fields[11].equals("id2") && fields[3].equals("2002")));
+        // sans identifiant, le titre fait partie de la clé
+        Assertions.assertTrue(deleted.stream().anyMatch(fields -> fields[0].equals("Titre 3")));
+    }
+
+    @Test
+    void cleLongue() throws IOException {
+        // sans identifiant, le titre fait partie de la clé : au delà de 65535 octets pour writeUTF
+        String titre = "Titre é".repeat(10_000);
+        File v1 = write("PROVIDER_GLOBAL_LONG_2024-01-01.tsv", List.of(line(titre, "", "2001", "")));
+        deltaService.saveIndex(v1, deltaService.computeDelta(v1));
+
+        File v2 = write("PROVIDER_GLOBAL_LONG_2024-02-01.tsv", List.of(line(titre, "", "2001", "")));
+        DeltaPlan plan = deltaService.computeDelta(v2);
+        Assertions.assertNull(plan.operation(2));
+        Assertions.assertTrue(plan.getDeletedKeys().isEmpty());
+    }
+
+    @Test
+    void verrouParPackage() {
+        Assertions.assertSame(deltaService.packageLock("PROVIDER_GLOBAL_PACKAGE_2024-01-01.tsv"),
+                deltaService.packageLock("PROVIDER_GLOBAL_PACKAGE_2024-02-01_FORCE.tsv.gz"));
+    }
+
+    private static File write(String fileName, List<String> lines) throws IOException {
+        File file = new File("target/" + fileName);
+        FileUtils.writeLines(file, StandardCharsets.UTF_8.name(), List.of(HEADER), false);
+        FileUtils.writeLines(file, StandardCharsets.UTF_8.name(), lines, true);
+        return file;
+    }
+
+    private static String line(String title, String onlineIdentifier, String date, String titleId) {
+        String[] fields = new String[25];
+        Arrays.fill(fields, "");
+        fields[KBART_COLUMN.publication_title.ordinal()] = title;
+        fields[KBART_COLUMN.online_identifier.ordinal()] = onlineIdentifier;
+        fields[KBART_COLUMN.date_first_issue_online.ordinal()] = date;
+        fields[KBART_COLUMN.title_id.ordinal()] = titleId;
+        fields[KBART_COLUMN.publication_type.ordinal()] = "serial";
+        return String.join("\t", fields);
+    }
+}
@@ -4,30 +4,79 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import fr.abes.kbart2kafka.dto.LigneKbartDto;
 import fr.abes.kbart2kafka.exception.IllegalDateException;
 import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.partition.PartitionStrategies;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializers;
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
-@SpringBootTest(classes = {FileService.class, ObjectMapper.class})
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(classes = {FileService.class, ObjectMapper.class, LigneKbartSerializers.class, PartitionStrategies.class, IngestionMetrics.class, SimpleMeterRegistry.class})
 class FileServiceTest {
+    private static final String HEADER = "publication_title\tprint_identifier\tonline_identifier\tdate_first_issue_online\tnum_first_vol_online\tnum_first_issue_online\tdate_last_issue_online\tnum_last_vol_online\tnum_last_issue_online\ttitle_url\tfirst_author\ttitle_id\tembargo_info\tcoverage_depth\tnotes\tpublisher_name\tpublication_type\tdate_monograph_published_print\tdate_monograph_published_online\tmonograph_volume\tmonograph_edition\tfirst_editor\tparent_publication_title_id\tpreceding_publication_title_id\taccess_type";
+    private static final String LIGNE = "Le titre de publication\t0001-4842\t1520-4898\t1996-01-10\t\t2\t1996-01\t3\t4\thttps://pubs.acs.org/loi/achre4\tSamQ\tachre4\tc quoi\tfulltext\tc une notes\tAmerican Chemical Society\tserial\t1996\t1996-01-13\t5\tc monograph_edition\tc first_editor\tjchsc2\tjchsc3\tP";
+
     @Value("${topic.name.target.kbart}")
     private String topicKbart;
 
 
     @Value("${abes.kafka.concurrency.nbThread}")
     private int nbThread;
+    @TempDir
+    Path tempDir;
+
     @Autowired
     FileService fileService;
 
     @Autowired
     ObjectMapper objectMapper;
 
+    @Autowired
+    IngestionMetrics metrics;
+
+    @Autowired
+    SimpleMeterRegistry registry;
+
+    @MockBean
+    KafkaTemplate<String, byte[]> kafkaTemplate;
+
     @MockBean
-    KafkaTemplate<String,String> kafkaTemplate;
+    DeltaService deltaService;
 
 
 
@@ -128,35 +177,16 @@ class FileServiceTest {
     }
 
     @Test
-    void testConstructionDTOlengthisKO() throws IllegalFileFormatException, IllegalDateException {
-        String[] lineInput = {
-                "Le titre de publication",
-                "0001-4842",
-                "1520-4898",
-                "1996-01-10",
-                "",
-                "2",
-                "1996-01",
-                "3",
-                "4",
-                "https://pubs.acs.org/loi/achre4",
-                "SamQ",
-                "achre4",
-                "c quoi",
-                "fulltext",
-                "c une notes",
-                "American Chemical Society",
-                "serial",
-                "1996",
-                "1996-01-13",
-                "5",
-                "c monograph_edition",
-                "c first_editor",
-                "jchsc2",
-                "jchsc3",
-        };
-
-        Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.constructDto(lineInput,1,1));
+    void testNombreDeColonnesIncorrect() throws IOException {
+        // une colonne de plus que l'entête, puis une LIGNE à laquelle manque la dernière colonne kbart
+        for (String ligneKO : List.of(LIGNE + "\tX", LIGNE.substring(0, LIGNE.lastIndexOf('\t')))) {
+            File file = kbartFile(HEADER + "\n" + LIGNE + "\n" + ligneKO + "\n");
+            Job job = new Job(file.getName());
+            IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.verifyLines(file, job));
+            Assertions.assertEquals("Format du fichier incorrect", erreur.getMessage());
+            Assertions.assertEquals(1, job.getErrors().get());
+            Assertions.assertEquals("nombre de colonnes incorrect", job.getReport().getEntries().get(0).getRule());
+        }
     }
 
     @Test
@@ -189,4 +219,209 @@ class FileServiceTest {
         };
         Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.constructDto(lineInput,1,1));
     }
+
+    @Test
+    void testVerifyLines() throws IOException, IllegalFileFormatException {
+        File file = kbartFile(HEADER + "\n" + LIGNE + "\n" + LIGNE + "\n\n");
+        Assertions.assertEquals(2, fileService.verifyLines(file, new Job(file.getName())));
+
+        File fileKO = kbartFile(HEADER + "\n" + LIGNE + "\n" + LIGNE.replace("serial", "seriafvdl") + "\n");
+        IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.verifyLines(fileKO, new Job(fileKO.getName())));
+        Assertions.assertEquals("Format du fichier incorrect", erreur.getMessage());
+
+        File fileLigneVide = kbartFile(HEADER + "\n" + LIGNE + "\n\n" + LIGNE + "\n");
+        erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.verifyLines(fileLigneVide, new Job(fileLigneVide.getName())));
+        Assertions.assertEquals("Le fichier ne contient pas de tabulation", erreur.getMessage());
+    }
+
+    @Test
+    void testMesuresDesControles() throws IOException, IllegalFileFormatException {
+        File file = kbartFile(HEADER + "\n" + LIGNE + "\n" + LIGNE + "\n");
+        List<String> checks = List.of("tabulation", "publication_title", "utf8", "line", "lines");
+        Map<String, Long> before = new HashMap<>();
+        for (String check : checks) {
+            Timer timer = registry.find(IngestionMetrics.VALIDATION_TIMER).tag("check", check).timer();
+            before.put(check, timer == null ? 0 : timer.count());
+        }
+
+        fileService.verifyLines(file, new Job(file.getName()));
+
+        // une seule mesure par contrôle pour le fichier, quel que soit le nombre de lignes
+        for (String check : checks) {
+            Assertions.assertEquals(before.get(check) + 1, registry.get(IngestionMetrics.VALIDATION_TIMER).tag("check", check).timer().count(), check);
+        }
+    }
+
+    @Test
+    void testRapportDeControle() throws IOException {
+        StringBuilder contenu = new StringBuilder(HEADER).append("\n");
+        // lignes 2 à 41 : date incorrecte, lignes 42 à 44 correctes, LIGNE 45 : date et type de publication incorrects
+        for (int i = 0; i < 40; i++) {
+            contenu.append(LIGNE.replace("1996-01-10", "10/01/" + (1900 + i))).append("\n");
+        }
+        contenu.append((LIGNE + "\n").repeat(3));
+        contenu.append(LIGNE.replace("1996-01-10", "janvier").replace("serial", "serie")).append("\n");
+        File file = kbartFile(contenu.toString());
+
+        Job job = new Job(file.getName());
+        Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.verifyLines(file, job));
+        Assertions.assertEquals(41, job.getErrors().get());
+        ValidationReport report = job.getReport();
+        Assertions.assertEquals(42, report.getErrors());
+        Assertions.assertEquals(41, report.getLineErrors());
+        Assertions.assertEquals(2, report.getEntries().size());
+
+        ValidationReport.Entry dates = report.getEntries().get(0);
+        Assertions.assertEquals("date_first_issue_online", dates.getColumn());
+        Assertions.assertEquals(41, dates.getCount());
+        Assertions.assertEquals(List.of("2-41", "45"), dates.getLines());
+        Assertions.assertEquals(5, dates.getSamples().size());
+        Assertions.assertEquals(2, dates.getSamples().get(0).getLine());
+        Assertions.assertEquals("10/01/1900", dates.getSamples().get(0).getValue());
+
+        ValidationReport.Entry type = report.getEntries().get(1);
+        Assertions.assertEquals("publication_type", type.getColumn());
+        Assertions.assertEquals(List.of("45"), type.getLines());
+        Assertions.assertEquals("serie", type.getSamples().get(0).getValue());
+    }
+
+    @Test
+    void testControleUtf8() throws IOException {
+        String ligne = LIGNE.replace("c une notes", "c une note accentuée");
+        File file = kbartFile(HEADER + "\n");
+        // ligne encodée en ISO-8859-1
+        FileUtils.writeByteArrayToFile(file, (ligne + "\n").getBytes(StandardCharsets.ISO_8859_1), true);
+
+        Job job = new Job(file.getName());
+        Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.verifyLines(file, job));
+        ValidationReport.Entry utf8 = job.getReport().getEntries().get(0);
+        Assertions.assertEquals("notes", utf8.getColumn());
+        Assertions.assertEquals(List.of("2"), utf8.getLines());
+        int index = ligne.indexOf('é');
+        Assertions.assertEquals("octet " + (HEADER.length() + 1 + index) + ", caractère " + (index + 1) + " : 0xE9", utf8.getSamples().get(0).getValue());
+    }
+
+    @Test
+    void testLoadFileSimultanes() throws Exception {
+        Mockito.when(kafkaTemplate.partitionsFor(topicKbart)).thenReturn(List.of(
+                new PartitionInfo(topicKbart, 0, null, null, null),
+                new PartitionInfo(topicKbart, 1, null, null, null),
+                new PartitionInfo(topicKbart, 2, null, null, null)));
+        Map<String, Integer> partitions = new ConcurrentHashMap<>();
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.<ProducerRecord<String, byte[]>>any())).thenAnswer(invocation -> {
+            ProducerRecord<String, byte[]> record = invocation.getArgument(0);
+            partitions.put(record.key(), record.partition());
+            return CompletableFuture.completedFuture(null);
+        });
+
+        List<File> files = new ArrayList<>();
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            File file = kbartFile("PROVIDER_PACKAGE" + i + "_", HEADER + "\n" + String.join("\n", Collections.nCopies(5, LIGNE)) + "\n");
+            files.add(file);
+            jobs.add(new Job(file.getName()));
+        }
+        CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> load(files.get(0), jobs.get(0))),
+                CompletableFuture.runAsync(() -> load(files.get(1), jobs.get(1)))).get(30, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(5, jobs.get(i).getLinesAcknowledged().get());
+            // chaque fichier a sa propre position de partitionnement
+            for (int cpt = 2; cpt <= 6; cpt++) {
+                Assertions.assertEquals((cpt - 2) % 3, partitions.get(files.get(i).getName() + "_" + cpt));
+            }
+        }
+    }
+
+    @Test
+    void testLoadStream() throws Exception {
+        Mockito.when(kafkaTemplate.partitionsFor(topicKbart)).thenReturn(List.of(new PartitionInfo(topicKbart, 0, null, null, null)));
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.<ProducerRecord<String, byte[]>>any())).thenReturn(CompletableFuture.completedFuture(null));
+        byte[] contenu = (HEADER + "\n" + LIGNE + "\n" + LIGNE + "\n").getBytes(StandardCharsets.UTF_8);
+
+        Job job = new Job("PROVIDER_PACKAGE_2023-01-01.tsv");
+        fileService.loadStream("PROVIDER_CONSORTIUM_PACKAGE_2023-01-01.tsv", new ByteArrayInputStream(contenu), 2, HEADER, job);
+        Assertions.assertEquals(2, job.getLinesAcknowledged().get());
+
+        // nombre de lignes reçues différent du nombre annoncé
+        Job job2 = new Job("PROVIDER_PACKAGE_2023-01-01.tsv");
+        IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class,
+                () -> fileService.loadStream("PROVIDER_CONSORTIUM_PACKAGE_2023-01-01.tsv", new ByteArrayInputStream(contenu), 3, HEADER, job2));
+        Assertions.assertEquals("Le fichier contient 2 lignes au lieu des 3 annoncées", erreur.getMessage());
+    }
+
+    @Test
+    void testEnvoiApresArret() throws Exception {
+        Mockito.when(kafkaTemplate.partitionsFor(topicKbart)).thenReturn(List.of(new PartitionInfo(topicKbart, 0, null, null, null)));
+        byte[] contenu = (HEADER + "\n" + LIGNE + "\n" + LIGNE + "\n").getBytes(StandardCharsets.UTF_8);
+        ExecutorService workerPool = (ExecutorService) ReflectionTestUtils.getField(fileService, "workerPool");
+        ExecutorService arrete = fileService.initExecutor();
+        arrete.shutdown();
+        ReflectionTestUtils.setField(fileService, "workerPool", arrete);
+        try {
+            // les lignes refusées sont comptées en erreur au lieu d'être attendues indéfiniment
+            Job job = new Job("PROVIDER_PACKAGE_2023-01-01.tsv");
+            KafkaException erreur = Assertions.assertThrows(KafkaException.class,
+                    () -> fileService.loadStream("PROVIDER_CONSORTIUM_PACKAGE_2023-01-01.tsv", new ByteArrayInputStream(contenu), 2, HEADER, job));
+            Assertions.assertEquals("2 lignes n'ont pas pu être envoyées dans kafka", erreur.getMessage());
+            Mockito.verify(kafkaTemplate, Mockito.never()).send(ArgumentMatchers.<ProducerRecord<String, byte[]>>any());
+        } finally {
+            ReflectionTestUtils.setField(fileService, "workerPool", workerPool);
+        }
+    }
+
+    @Test
+    void testLoadStreamConserve(@TempDir Path kbartDir) throws Exception {
+        Mockito.when(kafkaTemplate.partitionsFor(topicKbart)).thenReturn(List.of(new PartitionInfo(topicKbart, 0, null, null, null)));
+        Mockito.when(kafkaTemplate.send(ArgumentMatchers.<ProducerRecord<String, byte[]>>any())).thenReturn(CompletableFuture.completedFuture(null));
+        String contenu = HEADER + "\n" + LIGNE + "\n";
+        // comme le flux d'une requête http : illisible une fois fermé
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(contenu.getBytes(StandardCharsets.UTF_8))) {
+            private boolean closed;
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                return super.read(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                closed = true;
+                super.close();
+            }
+        };
+        JobService jobService = new JobService(fileService, Mockito.mock(ProviderPackageService.class), metrics, HEADER,
+                kbartDir.toString() + "/", 1, 10, Mockito.mock(ObjectProvider.class));
+
+        Job job = jobService.runStream("PROVIDER_CONSORTIUM_PACKAGE_2023-01-01.tsv", in, 1, true);
+
+        Assertions.assertEquals(JOB_STATE.COMPLETED, job.getState(), job.getMessage());
+        Assertions.assertEquals(contenu, Files.readString(kbartDir.resolve("PROVIDER_CONSORTIUM_PACKAGE_2023-01-01.tsv")));
+        jobService.shutdown();
+    }
+
+    private void load(File file, Job job) {
+        try {
+            fileService.loadFile(file, job);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fichier kbart temporaire, supprimé en fin de test
+     */
+    private File kbartFile(String contenu) throws IOException {
+        return kbartFile("kbart", contenu);
+    }
+
+    private File kbartFile(String prefix, String contenu) throws IOException {
+        File file = Files.createTempFile(tempDir, prefix, ".tsv").toFile();
+        FileUtils.writeStringToFile(file, contenu, StandardCharsets.UTF_8);
+        return file;
+    }
 }
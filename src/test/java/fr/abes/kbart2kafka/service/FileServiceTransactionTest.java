@@ -0,0 +1,175 @@
+package fr.abes.kbart2kafka.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fr.abes.kbart2kafka.configuration.KafkaConfig;
+import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.partition.PartitionStrategies;
+import fr.abes.kbart2kafka.serialization.LigneKbartSerializers;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+@SpringBootTest(classes = {FileService.class, ObjectMapper.class, LigneKbartSerializers.class, PartitionStrategies.class, IngestionMetrics.class, SimpleMeterRegistry.class, KafkaConfig.class},
+        properties = {"abes.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}", "abes.kafka.transaction.enabled=true", "abes.kafka.producer.linger-ms=5"})
+@EmbeddedKafka(partitions = 3, topics = {"test", "test-abort"},
+        brokerProperties = {"transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+@Slf4j
+class FileServiceTransactionTest {
+    private static final String HEADER = "publication_title\tprint_identifier\tonline_identifier\tdate_first_issue_online\tnum_first_vol_online\tnum_first_issue_online\tdate_last_issue_online\tnum_last_vol_online\tnum_last_issue_online\ttitle_url\tfirst_author\ttitle_id\tembargo_info\tcoverage_depth\tnotes\tpublisher_name\tpublication_type\tdate_monograph_published_print\tdate_monograph_published_online\tmonograph_volume\tmonograph_edition\tfirst_editor\tparent_publication_title_id\tpreceding_publication_title_id\taccess_type";
+    private static final String LIGNE = "Le titre de publication\t0001-4842\t1520-4898\t1996-01-10\t\t2\t1996-01\t3\t4\thttps://pubs.acs.org/loi/achre4\tSamQ\tachre4\tc quoi\tfulltext\tc une notes\tAmerican Chemical Society\tserial\t1996\t1996-01-13\t5\tc monograph_edition\tc first_editor\tjchsc2\tjchsc3\tP";
+
+    @Autowired
+    FileService fileService;
+
+    @Autowired
+    KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    @Autowired
+    IngestionMetrics metrics;
+
+    @Autowired
+    EmbeddedKafkaBroker embeddedKafka;
+
+    @MockBean
+    DeltaService deltaService;
+
+    @Test
+    void testLoadFileTransactionnel() throws Exception {
+        File file = kbart("PROVIDER_PACKAGETX_2023-01-01.tsv", 50);
+        Job job = new Job(file.getName());
+        fileService.loadFile(file, job);
+
+        Assertions.assertEquals(50, job.getLinesAcknowledged().get());
+        Assertions.assertEquals(50, countCommitted("test", file.getName() + "_", 50));
+    }
+
+    @Test
+    void testTransactionAnnulee() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(3);
+        try (KafkaTransaction transaction = new KafkaTransaction(kafkaTemplate.getProducerFactory(), 0, metrics)) {
+            for (int i = 0; i < 3; i++) {
+                transaction.send(new ProducerRecord<>("test-abort", "abort_" + i, new byte[]{1}), (metadata, ex) -> written.countDown());
+            }
+            // sans attendre l'acquittement, l'annulation supprimerait les messages avant leur écriture dans le topic
+            Assertions.assertTrue(written.await(10, TimeUnit.SECONDS));
+        }
+        // les messages ont été écrits dans le topic mais ne sont pas visibles en read_committed
+        Assertions.assertEquals(3, count("test-abort", "abort_", 3, "read_uncommitted"));
+        Assertions.assertEquals(0, countCommitted("test-abort", "abort_", 0));
+    }
+
+    @Test
+    void testLoadStreamAnnuleSurErreur() {
+        Job job = new Job("PROVIDER_CONSORTIUM_PACKAGEKO_2023-01-01.tsv");
+        String debut = HEADER + "\n" + String.join("\n", Collections.nCopies(3, LIGNE)) + "\n";
+        // la quatrième ligne, à la date incorrecte, n'est reçue qu'une fois les trois premières écrites dans le topic
+        InputStream fin = new ByteArrayInputStream((LIGNE.replace("1996-01-10", "10/01/1996") + "\n").getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                for (int i = 0; i < 100 && job.getLinesAcknowledged().get() < 3; i++) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                return super.read(b, off, len);
+            }
+        };
+        InputStream in = new SequenceInputStream(new ByteArrayInputStream(debut.getBytes(StandardCharsets.UTF_8)), fin);
+        Assertions.assertThrows(IllegalFileFormatException.class, () -> fileService.loadStream("PROVIDER_CONSORTIUM_PACKAGEKO_2023-01-01.tsv", in, 4, HEADER, job));
+
+        Assertions.assertEquals(3, job.getLinesAcknowledged().get());
+        Assertions.assertEquals(3, count("test", "PROVIDER_CONSORTIUM_PACKAGEKO_2023-01-01.tsv_", 3, "read_uncommitted"));
+        Assertions.assertEquals(0, countCommitted("test", "PROVIDER_CONSORTIUM_PACKAGEKO_2023-01-01.tsv_", 0));
+    }
+
+    /**
+     * Comparaison du débit avec et sans transaction : une seule transaction par fichier ne doit pas diviser le débit
+     * par plus de deux (marge large, les durées mesurées sur une machine de test étant variables)
+     */
+    @Test
+    void testDebitTransactionnel() throws Exception {
+        int nbLines = 2000;
+        File file = kbart("PROVIDER_PACKAGEDEBIT_2023-01-01.tsv", nbLines);
+        Map<Boolean, Double> throughput = new LinkedHashMap<>();
+        try {
+            for (boolean transactional : new boolean[]{false, true}) {
+                ReflectionTestUtils.setField(fileService, "transactional", transactional);
+                Job job = new Job(file.getName());
+                long start = System.nanoTime();
+                fileService.loadFile(file, job);
+                throughput.put(transactional, nbLines / ((System.nanoTime() - start) / 1e9));
+                Assertions.assertEquals(nbLines, job.getLinesAcknowledged().get());
+            }
+        } finally {
+            ReflectionTestUtils.setField(fileService, "transactional", true);
+        }
+        log.info("Débit sans transaction : {} lignes/s, avec transaction : {} lignes/s", Math.round(throughput.get(false)), Math.round(throughput.get(true)));
+        Assertions.assertTrue(throughput.get(true) > throughput.get(false) / 2,
+                "Débit avec transaction " + Math.round(throughput.get(true)) + " lignes/s, sans transaction " + Math.round(throughput.get(false)) + " lignes/s");
+    }
+
+    private File kbart(String name, int nbLines) throws Exception {
+        File dir = new File("target/transaction");
+        dir.mkdirs();
+        File file = new File(dir, name);
+        FileUtils.writeStringToFile(file, HEADER + "\n" + String.join("\n", Collections.nCopies(nbLines, LIGNE)) + "\n", StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private int countCommitted(String topic, String keyPrefix, int expected) {
+        return count(topic, keyPrefix, expected, "read_committed");
+    }
+
+    /**
+     * Nombre de messages dont la clé commence par keyPrefix lus par un consommateur du niveau d'isolation demandé,
+     * en attendant au plus 10 secondes d'en avoir lu expected (3 secondes si aucun n'est attendu)
+     */
+    private int count(String topic, String keyPrefix, int expected, String isolationLevel) {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("tx-" + topic + "-" + System.nanoTime(), "false", embeddedKafka);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, isolationLevel);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        try (Consumer<String, byte[]> consumer = new KafkaConsumer<>(props, new StringDeserializer(), new ByteArrayDeserializer())) {
+            consumer.subscribe(List.of(topic));
+            long end = System.currentTimeMillis() + (expected == 0 ? 3000 : 10000);
+            while (System.currentTimeMillis() < end) {
+                consumer.poll(Duration.ofMillis(200)).forEach(records::add);
+                if (records.stream().filter(r -> r.key().startsWith(keyPrefix)).count() >= expected && expected > 0) {
+                    break;
+                }
+            }
+        }
+        return (int) records.stream().filter(r -> r.key().startsWith(keyPrefix)).count();
+    }
+}
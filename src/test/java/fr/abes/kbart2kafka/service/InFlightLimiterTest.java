@@ -0,0 +1,42 @@
+package fr.abes.kbart2kafka.service;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class InFlightLimiterTest {
+    @Test
+    void limiteNombreDeLignes() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(2, 1000);
+        Assertions.assertEquals(0, limiter.acquire(10));
+        Assertions.assertEquals(0, limiter.acquire(10));
+        CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(() -> acquire(limiter, 10));
+        Assertions.assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+        limiter.release(10);
+        Assertions.assertTrue(blocked.get(5, TimeUnit.SECONDS) > 0);
+    }
+
+    @Test
+    void limiteNombreOctets() throws Exception {
+        InFlightLimiter limiter = new InFlightLimiter(100, 100);
+        Assertions.assertEquals(0, limiter.acquire(60));
+        CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(() -> acquire(limiter, 60));
+        Assertions.assertThrows(TimeoutException.class, () -> blocked.get(200, TimeUnit.MILLISECONDS));
+        limiter.release(60);
+        Assertions.assertTrue(blocked.get(5, TimeUnit.SECONDS) > 0);
+        // une ligne plus grosse que la limite passe seule
+        limiter.release(60);
+        Assertions.assertEquals(0, limiter.acquire(500));
+    }
+
+    private static long acquire(InFlightLimiter limiter, int size) {
+        try {
+            return limiter.acquire(size);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
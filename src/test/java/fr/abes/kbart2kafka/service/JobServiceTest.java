@@ -0,0 +1,165 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.exception.IllegalFileFormatException;
+import fr.abes.kbart2kafka.job.Job;
+import fr.abes.kbart2kafka.utils.JOB_STATE;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(classes = {JobService.class, IngestionMetrics.class, SimpleMeterRegistry.class}, properties = {"kbart.header=publication_title"})
+class JobServiceTest {
+    @TempDir
+    static Path kbartDir;
+
+    @DynamicPropertySource
+    static void kbartProperties(DynamicPropertyRegistry registry) {
+        registry.add("abes.pathToKbart", () -> kbartDir.toString() + "/");
+    }
+
+    @Autowired
+    JobService jobService;
+
+    @Autowired
+    SimpleMeterRegistry registry;
+
+    @MockBean
+    FileService fileService;
+
+    @MockBean
+    ProviderPackageService providerPackageService;
+
+    @Test
+    void fichierIntrouvable() throws Exception {
+        Job job = jobService.submit("PROVIDER_CONSORTIUM_PACKAGE_2024-01-01.tsv");
+        Assertions.assertTrue(jobService.getJob(job.getId()).isPresent());
+        for (int i = 0; i < 50 && !job.isFinished(); i++) {
+            Thread.sleep(100);
+        }
+        Assertions.assertEquals(JOB_STATE.FAILED, job.getState());
+        Assertions.assertEquals("Le fichier PROVIDER_CONSORTIUM_PACKAGE_2024-01-01.tsv n'est pas trouvable", job.getMessage());
+        Mockito.verify(fileService, Mockito.never()).loadFile(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    void sequenceEnchainee() throws Exception {
+        List<Job> sequence = jobService.submitSequence(List.of("PROVIDER_CONSORTIUM_PACKAGE_2024-01-01.tsv", "PROVIDER_CONSORTIUM_PACKAGE_2024-02-01.tsv"));
+        for (Job job : sequence) {
+            job.awaitFinished();
+        }
+        Assertions.assertEquals(JOB_STATE.FAILED, sequence.get(1).getState());
+        // le second fichier n'est planifié qu'à la fin du premier
+        Assertions.assertFalse(sequence.get(1).getStartDate().isBefore(sequence.get(0).getEndDate()));
+    }
+
+    @Test
+    void fluxConserve() throws Exception {
+        String contenu = "header\nligne\n";
+        Mockito.doAnswer(invocation -> {
+            ((InputStream) invocation.getArgument(1)).readAllBytes();
+            return null;
+        }).when(fileService).loadStream(ArgumentMatchers.eq("PROVIDER_CONSORTIUM_STREAM_2024-01-01.tsv"), ArgumentMatchers.any(), ArgumentMatchers.eq(1), ArgumentMatchers.any(), ArgumentMatchers.any());
+        Path target = kbartDir.resolve("PROVIDER_CONSORTIUM_STREAM_2024-01-01.tsv");
+
+        Job job = jobService.runStream("PROVIDER_CONSORTIUM_STREAM_2024-01-01.tsv", new ByteArrayInputStream(contenu.getBytes(StandardCharsets.UTF_8)), 1, true);
+
+        Assertions.assertEquals(JOB_STATE.COMPLETED, job.getState());
+        Assertions.assertEquals(contenu, Files.readString(target));
+        Assertions.assertFalse(Files.exists(kbartDir.resolve(".PROVIDER_CONSORTIUM_STREAM_2024-01-01.tsv.part")));
+    }
+
+    @Test
+    void fluxEnErreur() throws Exception {
+        Mockito.doThrow(new IllegalFileFormatException("Format du fichier incorrect"))
+                .when(fileService).loadStream(ArgumentMatchers.eq("PROVIDER_CONSORTIUM_STREAMKO_2024-01-01.tsv"), ArgumentMatchers.any(), ArgumentMatchers.anyInt(), ArgumentMatchers.any(), ArgumentMatchers.any());
+
+        Job job = jobService.runStream("PROVIDER_CONSORTIUM_STREAMKO_2024-01-01.tsv", new ByteArrayInputStream(new byte[0]), 1, true);
+
+        Assertions.assertEquals(JOB_STATE.FAILED, job.getState());
+        Assertions.assertEquals("Format du fichier incorrect", job.getMessage());
+        Assertions.assertFalse(Files.exists(kbartDir.resolve("PROVIDER_CONSORTIUM_STREAMKO_2024-01-01.tsv")));
+        Assertions.assertFalse(Files.exists(kbartDir.resolve(".PROVIDER_CONSORTIUM_STREAMKO_2024-01-01.tsv.part")));
+    }
+
+    @Test
+    void mesuresDuChargement() throws Exception {
+        String fileName = "PROVIDER_CONSORTIUM_MESURES_2024-01-01.tsv";
+        Files.writeString(kbartDir.resolve(fileName), "publication_title\nTitre\n");
+        List<String> checks = List.of("filename", "provider", "extension", "header");
+        Map<String, Long> before = new HashMap<>();
+        for (String check : checks) {
+            Timer timer = registry.find(IngestionMetrics.VALIDATION_TIMER).tag("check", check).timer();
+            before.put(check, timer == null ? 0 : timer.count());
+        }
+        long throughputs = registry.get(IngestionMetrics.LINES_PER_SECOND).summary().count();
+
+        Job job = new Job(fileName);
+        jobService.run(job);
+
+        Assertions.assertEquals(JOB_STATE.COMPLETED, job.getState());
+        for (String check : checks) {
+            Assertions.assertEquals(before.get(check) + 1, registry.get(IngestionMetrics.VALIDATION_TIMER).tag("check", check).timer().count(), check);
+        }
+        // une seule série pour tous les fichiers
+        Assertions.assertEquals(throughputs + 1, registry.get(IngestionMetrics.LINES_PER_SECOND).summary().count());
+        Assertions.assertTrue(registry.get(IngestionMetrics.LINES_PER_SECOND).summary().getId().getTags().isEmpty());
+    }
+
+    @Test
+    void traitementsTerminesSupprimes() throws Exception {
+        FileService files = Mockito.mock(FileService.class);
+        CountDownLatch fin = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> fin.await(10, TimeUnit.SECONDS)).when(files).loadFile(ArgumentMatchers.any(), ArgumentMatchers.any());
+        JobService service = new JobService(files, Mockito.mock(ProviderPackageService.class), new IngestionMetrics(new SimpleMeterRegistry()),
+                "publication_title", kbartDir + "/", 2, 2, Mockito.mock(ObjectProvider.class));
+        String enCoursName = "PROVIDER_CONSORTIUM_ENCOURS_2024-01-01.tsv";
+        Files.writeString(kbartDir.resolve(enCoursName), "publication_title\nTitre\n");
+        try {
+            Job enCours = service.submit(enCoursName);
+            List<Job> termines = new ArrayList<>();
+            for (int i = 1; i <= 5; i++) {
+                Job job = service.submit("PROVIDER_CONSORTIUM_ABSENT_2024-01-0" + i + ".tsv");
+                job.awaitFinished();
+                termines.add(job);
+            }
+
+            // le traitement en cours, le plus ancien, n'empêche pas la suppression des traitements terminés
+            Assertions.assertFalse(enCours.isFinished());
+            Assertions.assertTrue(service.getJob(enCours.getId()).isPresent());
+            Assertions.assertTrue(service.getJob(termines.get(4).getId()).isPresent());
+            for (Job job : termines.subList(0, 4)) {
+                Assertions.assertTrue(service.getJob(job.getId()).isEmpty());
+            }
+        } finally {
+            fin.countDown();
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void jobInconnu() {
+        Assertions.assertTrue(jobService.getJob("inconnu").isEmpty());
+    }
+}
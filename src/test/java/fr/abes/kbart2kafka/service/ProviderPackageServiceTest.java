@@ -1,13 +1,12 @@
 package fr.abes.kbart2kafka.service;
 
-import fr.abes.kbart2kafka.entity.Provider;
-import fr.abes.kbart2kafka.entity.ProviderPackage;
 import fr.abes.kbart2kafka.repository.ProviderPackageRepository;
-import fr.abes.kbart2kafka.repository.ProviderRepository;
-import org.assertj.core.util.Lists;
+import fr.abes.kbart2kafka.utils.Utils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -16,9 +15,10 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-@SpringBootTest(classes = {ProviderPackageService.class})
+@SpringBootTest(classes = {ProviderPackageService.class, IngestionMetrics.class, SimpleMeterRegistry.class})
 class ProviderPackageServiceTest {
     @Autowired
     ProviderPackageService service;
@@ -26,27 +26,13 @@ class ProviderPackageServiceTest {
     @MockBean
     ProviderPackageRepository providerPackageRepository;
 
-    @MockBean
-    ProviderRepository providerRepository;
-
     @Test
     @DisplayName("test isMoreRecentPackage : cas général")
     void isMoreRecentPackageInBdd() {
-        Provider provider = new Provider(1, "provider", "nomContact", "prenomContact", "mail@contact.com", "displayName");
-        Mockito.when(providerRepository.findByProvider("provider")).thenReturn(Optional.of(provider));
         Calendar calendar = Calendar.getInstance();
-        calendar.set(2022, Calendar.NOVEMBER, 1);
-        Date date1 = calendar.getTime();
-        ProviderPackage package1 = new ProviderPackage(1, "package", date1, 1, 'Y');
         calendar.set(2023, Calendar.SEPTEMBER, 10);
-        Date date2 = calendar.getTime();
-        ProviderPackage package2 = new ProviderPackage(2, "package", date2, 1, 'Y');
-        calendar.set(2023, Calendar.AUGUST, 5);
-        Date date3 = calendar.getTime();
-        ProviderPackage package3 = new ProviderPackage(3, "package", date3, 1, 'Y');
-
-        List<ProviderPackage> packageList = Lists.newArrayList(package1, package2, package3);
-        Mockito.when(providerPackageRepository.findByPackageNameAndProviderIdtProvider("package", 1)).thenReturn(packageList);
+        Date latestDate = calendar.getTime();
+        Mockito.when(providerPackageRepository.findLatestDateP("provider", "package")).thenReturn(Optional.of(latestDate));
 
         calendar.set(2023, Calendar.MAY, 20);
         Date inputDate = calendar.getTime();
@@ -58,15 +44,54 @@ class ProviderPackageServiceTest {
         Assertions.assertFalse(service.hasMoreRecentPackageInBdd("provider", "package", inputDate));
 
         //cas date égale
-        calendar.set(2023, Calendar.SEPTEMBER, 10);
-        inputDate = calendar.getTime();
-        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("provider", "package", inputDate));
+        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("provider", "package", latestDate));
+
+        // les appels suivants utilisent le cache
+        Mockito.verify(providerPackageRepository, Mockito.times(1)).findLatestDateP("provider", "package");
+    }
+
+    @Test
+    @DisplayName("test isMoreRecentPackage : package chargé reporté dans le cache")
+    void isMoreRecentPackageApresChargement() throws Exception {
+        Mockito.when(providerPackageRepository.findLatestDateP("PROVIDER", "CHARGE")).thenReturn(Optional.empty());
+        Date janvier = Utils.extractDateFilename("PROVIDER_CHARGE_2024-01-01.tsv");
+        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("PROVIDER", "CHARGE", janvier));
+
+        service.packageLoaded("PROVIDER_CHARGE_2024-03-01.tsv");
+        Assertions.assertTrue(service.hasMoreRecentPackageInBdd("PROVIDER", "CHARGE", janvier));
+        // un fichier plus ancien chargé ensuite (FORCE) ne remplace pas la date connue
+        service.packageLoaded("PROVIDER_CHARGE_2023-12-01_FORCE.tsv");
+        Assertions.assertTrue(service.hasMoreRecentPackageInBdd("PROVIDER", "CHARGE", janvier));
+        Mockito.verify(providerPackageRepository, Mockito.times(1)).findLatestDateP("PROVIDER", "CHARGE");
     }
 
     @Test
     @DisplayName("test isMoreRecentPacakge : cas pas de provider trouvé")
     void isMoreRecentPacakageInBddNoProvider() {
-        Mockito.when(providerRepository.findByProvider("provider")).thenReturn(Optional.empty());
-        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("provider", "package", Calendar.getInstance().getTime()));
+        Mockito.when(providerPackageRepository.findLatestDateP("inconnu", "package")).thenReturn(Optional.empty());
+        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("inconnu", "package", Calendar.getInstance().getTime()));
+    }
+
+    @Test
+    @DisplayName("test isMoreRecentPackage : plusieurs fichiers en une requête")
+    void isMoreRecentPackageInBddBulk() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.FEBRUARY, 1);
+        Date latestDate = calendar.getTime();
+        ProviderPackageRepository.LatestPackageDate row = Mockito.mock(ProviderPackageRepository.LatestPackageDate.class);
+        Mockito.when(row.getProvider()).thenReturn("BRILL");
+        Mockito.when(row.getPackageName()).thenReturn("GLOBAL_JOURNALS");
+        Mockito.when(row.getDateP()).thenReturn(latestDate);
+        Mockito.when(providerPackageRepository.findLatestDateP(ArgumentMatchers.anyCollection(), ArgumentMatchers.anyCollection())).thenReturn(List.of(row));
+
+        Map<String, Boolean> result = service.hasMoreRecentPackageInBdd(List.of(
+                "BRILL_GLOBAL_JOURNALS_2024-01-01.tsv",
+                "BRILL_GLOBAL_JOURNALS_2024-03-01.tsv",
+                "SPRINGER_GLOBAL_BOOKS_2024-01-01.tsv",
+                "incorrect.tsv"));
+        Assertions.assertEquals(Map.of("BRILL_GLOBAL_JOURNALS_2024-01-01.tsv", true, "BRILL_GLOBAL_JOURNALS_2024-03-01.tsv", false, "SPRINGER_GLOBAL_BOOKS_2024-01-01.tsv", false), result);
+        Mockito.verify(providerPackageRepository, Mockito.times(1)).findLatestDateP(ArgumentMatchers.anyCollection(), ArgumentMatchers.anyCollection());
+        Assertions.assertFalse(service.hasMoreRecentPackageInBdd("SPRINGER", "GLOBAL_BOOKS", latestDate));
+        Mockito.verify(providerPackageRepository, Mockito.never()).findLatestDateP("SPRINGER", "GLOBAL_BOOKS");
     }
-}
\ No newline at end of file
+}
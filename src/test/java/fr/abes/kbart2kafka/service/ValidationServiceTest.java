@@ -0,0 +1,95 @@
+package fr.abes.kbart2kafka.service;
+
+import fr.abes.kbart2kafka.job.ValidationReport;
+import fr.abes.kbart2kafka.utils.DATE_FORMAT;
+import fr.abes.kbart2kafka.validation.ValidationResult;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+@SpringBootTest(classes = {ValidationService.class}, properties = {"kbart.header=publication_title", "abes.pathToKbart=target/validation/",
+        "abes.validation.nbThread=4", "abes.validation.splitSize=1024"})
+class ValidationServiceTest {
+    private static final String HEADER = "publication_title\tprint_identifier\tonline_identifier\tdate_first_issue_online\tnum_first_vol_online\tnum_first_issue_online\tdate_last_issue_online\tnum_last_vol_online\tnum_last_issue_online\ttitle_url\tfirst_author\ttitle_id\tembargo_info\tcoverage_depth\tnotes\tpublisher_name\tpublication_type\tdate_monograph_published_print\tdate_monograph_published_online\tmonograph_volume\tmonograph_edition\tfirst_editor\tparent_publication_title_id\tpreceding_publication_title_id\taccess_type";
+    private static final String LIGNE = "Le titre de publication\t0001-4842\t1520-4898\t1996-01-10\t\t2\t1996-01\t3\t4\thttps://pubs.acs.org/loi/achre4\tSamQ\tachre4\tc quoi\tfulltext\tc une notes\tAmerican Chemical Society\tserial\t1996\t1996-01-13\t5\tc monograph_edition\tc first_editor\tjchsc2\tjchsc3\tP";
+
+    @Autowired
+    ValidationService validationService;
+
+    @Test
+    void validateEnParallele() throws Exception {
+        File file = kbart("PROVIDER_CONSORTIUM_VALIDATION_2024-01-01.tsv");
+        ValidationResult result = validationService.validate(file);
+
+        Assertions.assertTrue(result.getNbSplits() > 1);
+        Assertions.assertFalse(result.isValid());
+        Assertions.assertEquals(100, result.getStatistics().getLines());
+        Assertions.assertEquals(Map.of(24, 1L, 25, 99L), result.getStatistics().getColumnCounts());
+        Assertions.assertEquals(Map.of("serial", 98L, "monograph", 1L, "serie", 1L), result.getStatistics().getPublicationTypes());
+        Assertions.assertEquals(2, result.getStatistics().getDateFormats().get("date_first_issue_online").get(DATE_FORMAT.INVALID));
+        Assertions.assertEquals(0.03, result.getStatistics().getEmptyIdentifierRate(), 1e-9);
+        ValidationReport report = result.getReport();
+        Assertions.assertEquals(List.of(11, 12, 60, 101), report.getFirstErrors().stream().map(ValidationReport.LineError::getLine).toList());
+        Assertions.assertEquals(List.of("11-12"), report.getEntries().get(0).getLines());
+
+        // même résultat en une seule portion
+        ReflectionTestUtils.setField(validationService, "splitSize", Long.MAX_VALUE);
+        try {
+            ValidationResult sequential = validationService.validate(file);
+            Assertions.assertEquals(1, sequential.getNbSplits());
+            Assertions.assertEquals(result.getStatistics().getDateFormats(), sequential.getStatistics().getDateFormats());
+            Assertions.assertEquals(lines(report), lines(sequential.getReport()));
+        } finally {
+            ReflectionTestUtils.setField(validationService, "splitSize", 1024L);
+        }
+    }
+
+    @Test
+    void validateEnteteIncorrect() throws Exception {
+        File file = new File("target/validation/PROVIDER_CONSORTIUM_ENTETE_2024-01-01.tsv");
+        FileUtils.writeStringToFile(file, "titre\n" + LIGNE + "\n", StandardCharsets.UTF_8);
+        ValidationResult result = validationService.validate(file);
+        Assertions.assertFalse(result.isValid());
+        Assertions.assertNull(result.getReport());
+        Assertions.assertTrue(result.getMessage().startsWith("L'en tete du fichier est incorrecte"));
+    }
+
+    /**
+     * Lignes 11 et 12 : date incorrecte, ligne 60 : type de publication incorrect, ligne 101 : colonne manquante,
+     * lignes 30 à 32 sans identifiant, ligne 80 : monographie
+     */
+    private static File kbart(String name) throws IOException {
+        StringBuilder contenu = new StringBuilder(HEADER).append('\n');
+        for (int cpt = 2; cpt <= 101; cpt++) {
+            String ligne = LIGNE;
+            if (cpt == 11 || cpt == 12) {
+                ligne = ligne.replace("1996-01-10", "10/01/1996");
+            } else if (cpt == 60) {
+                ligne = ligne.replace("serial", "serie");
+            } else if (cpt == 101) {
+                ligne = ligne.substring(0, ligne.lastIndexOf('\t'));
+            } else if (cpt >= 30 && cpt <= 32) {
+                ligne = ligne.replace("0001-4842\t1520-4898", "\t");
+            } else if (cpt == 80) {
+                ligne = ligne.replace("serial", "monograph");
+            }
+            contenu.append(ligne).append('\n');
+        }
+        File file = new File("target/validation/" + name);
+        FileUtils.writeStringToFile(file, contenu.toString(), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<String> lines(ValidationReport report) {
+        return report.getEntries().stream().map(ValidationReport.Entry::toString).toList();
+    }
+}
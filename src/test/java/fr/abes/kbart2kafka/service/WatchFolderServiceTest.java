@@ -0,0 +1,62 @@
+package fr.abes.kbart2kafka.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@SpringBootTest(classes = {WatchFolderService.class}, properties = {"abes.watch.enabled=true", "abes.pathToKbart=target/watch/",
+        "abes.watch.pollInterval=3600000", "abes.watch.checkInterval=3600000", "abes.watch.stabilityDelay=100"})
+class WatchFolderServiceTest {
+    static {
+        new File("target/watch").mkdirs();
+    }
+
+    @Autowired
+    WatchFolderService watchFolderService;
+
+    @MockBean
+    BatchService batchService;
+
+    @Test
+    void fichierChargeUneFoisStable() throws IOException {
+        File file = new File("target/watch/PROVIDER_CONSORTIUM_PACKAGE_2024-01-01.tsv");
+        FileUtils.writeStringToFile(file, "publication_title\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File("target/watch/notes.txt"), "notes", StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        watchFolderService.observe(file.getName());
+        watchFolderService.observe("notes.txt");
+        Assertions.assertTrue(watchFolderService.collectReadyFiles(now).isEmpty());
+        Assertions.assertEquals(List.of(file.getName()), watchFolderService.collectReadyFiles(now + 200));
+
+        // déjà soumis
+        watchFolderService.observe(file.getName());
+        Assertions.assertTrue(watchFolderService.collectReadyFiles(now + 400).isEmpty());
+
+        // fichier déposé à nouveau avec un contenu différent
+        FileUtils.writeStringToFile(file, "publication_title\ttitre\n", StandardCharsets.UTF_8);
+        watchFolderService.observe(file.getName());
+        long later = System.currentTimeMillis();
+        Assertions.assertEquals(List.of(file.getName()), watchFolderService.collectReadyFiles(later + 200));
+        FileUtils.deleteQuietly(file);
+    }
+
+    @Test
+    void fluxConserveNonRecharge() throws IOException {
+        File file = new File("target/watch/PROVIDER_CONSORTIUM_STREAM_2024-01-01.tsv");
+        FileUtils.writeStringToFile(file, "publication_title\n", StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        watchFolderService.observe(file.getName());
+        watchFolderService.markLoaded(file.getName());
+        watchFolderService.observe(file.getName());
+        Assertions.assertTrue(watchFolderService.collectReadyFiles(now + 200).isEmpty());
+        FileUtils.deleteQuietly(file);
+    }
+}
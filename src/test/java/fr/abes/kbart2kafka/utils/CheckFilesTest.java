@@ -38,6 +38,9 @@ class CheckFilesTest {
         IllegalFileFormatException erreur2 = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.isFileWithTSVExtension(file2));
         Assertions.assertEquals("Le nom du fichier est vide", erreur2.getMessage());
 
+        CheckFiles.isFileWithTSVExtension(new File("test.tsv.gz"));
+        CheckFiles.isFileWithTSVExtension(new File("test.zip"));
+
         this.file3 = new File("test2.csv");
         IllegalFileFormatException erreur3 = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.isFileWithTSVExtension(file3));
         Assertions.assertEquals("le fichier n'est pas au format tsv", erreur3.getMessage());
@@ -51,7 +54,12 @@ class CheckFilesTest {
         this.file2 = new File("test_test_test_1234-12-12_FORCE.tsv");
         CheckFiles.detectFileNameAndReturnIsBypass(file2);
 
-        for(String name : Lists.newArrayList("123", "test_1234-12-12.tsv", "test_test_134-12-12.tsv", "test_test_1344-12-12.tsvf", "test_test_1344-12-123.tsv", "test_test_test_test1_1234-12-12_force.tsv")) {
+        for(String name : Lists.newArrayList("test_test_test_1234-12-12.tsv.gz", "test_test_test_1234-12-12_FORCE.tsv.zst", "test_test_test_1234-12-12.zip")) {
+            CheckFiles.detectFileNameAndReturnIsBypass(new File(name));
+        }
+        Assertions.assertTrue(CheckFiles.detectFileNameAndReturnIsBypass(new File("test_test_test_1234-12-12_BYPASS.tsv.gz")));
+
+        for(String name : Lists.newArrayList("123", "test_test_test_1234-12-12.gz", "test_1234-12-12.tsv", "test_test_134-12-12.tsv", "test_test_1344-12-12.tsvf", "test_test_1344-12-123.tsv", "test_test_test_test1_1234-12-12_force.tsv")) {
             this.file3 = new File(name);
             IllegalFileFormatException erreur2 = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.detectFileNameAndReturnIsBypass(file3));
             Assertions.assertEquals("Le nom du fichier " + name + " n'est pas correct", erreur2.getMessage());
@@ -77,12 +85,33 @@ class CheckFilesTest {
     void detectTabulations() throws IOException, IllegalFileFormatException {
         this.file = new File("test.tsv");
         FileUtils.writeStringToFile(file, "test\ttest\ttest", StandardCharsets.UTF_8, true);
-        CheckFiles.detectTabulations(file);
+        try (KbartTokenizer ligne = KbartTokenizer.open(file)) {
+            Assertions.assertTrue(ligne.nextLine());
+            CheckFiles.detectTabulations(ligne);
+        }
 
         this.file2 = new File("test2.tsv");
         FileUtils.writeStringToFile(file2, "test;test;test", StandardCharsets.UTF_8, true);
-        IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.detectTabulations(file2));
-        Assertions.assertEquals("Le fichier ne contient pas de tabulation", erreur.getMessage());
+        try (KbartTokenizer ligne = KbartTokenizer.open(file2)) {
+            Assertions.assertTrue(ligne.nextLine());
+            IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.detectTabulations(ligne));
+            Assertions.assertEquals("Le fichier ne contient pas de tabulation", erreur.getMessage());
+        }
+    }
+
+    @Test
+    void checkPublicationTitle() throws IOException, IllegalFileFormatException {
+        this.file = new File("test.tsv");
+        FileUtils.writeStringToFile(file, "publication_title\tprint_identifier\nTitre\t0001-4842\n\t0001-4842\n", StandardCharsets.UTF_8, true);
+        try (KbartTokenizer ligne = KbartTokenizer.open(file)) {
+            Assertions.assertTrue(ligne.nextLine());
+            KbartColumns columns = KbartColumns.compile(ligne.line());
+            Assertions.assertTrue(ligne.nextLine());
+            CheckFiles.checkPublicationTitle(ligne, columns);
+            Assertions.assertTrue(ligne.nextLine());
+            IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.checkPublicationTitle(ligne, columns));
+            Assertions.assertEquals("Le fichier a une ligne qui ne contient pas de publication_title", erreur.getMessage());
+        }
     }
 
     @Test
@@ -118,11 +147,10 @@ class CheckFilesTest {
         IllegalFileFormatException erreur3 = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.detectHeaderPresence(header, file3, false));
         Assertions.assertEquals("L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : testA\ttestB\ttestC\ttestD\ttestE\ttestF\ttestG\ttestH\ttestI\ttestJ\ttestK\ttestL\ttestM\ttestN\ttestO\ttestP\ttestQ\ttestR\ttestS\ttestT\ttestU\ttestV\ttestW\ttestX\ttestY et best_ppn", erreur3.getMessage());
 
-        // header à 26 colonnes avec erreur de nom de colonne
+        // header à 26 colonnes dont une colonne propre au fournisseur, ignorée
         File file4 = new File("test4.tsv");
         FileUtils.writeStringToFile(file4, "testA\ttestB\ttestC\ttestD\ttestE\ttestF\ttestG\ttestH\ttestI\ttestJ\ttestK\ttestL\ttestM\ttestN\ttestO\ttestP\ttestQ\ttestR\ttestS\ttestT\ttestU\ttestV\ttestW\ttestX\ttestY\ttestZ", StandardCharsets.UTF_8, true);
-        IllegalFileFormatException erreur4 = Assertions.assertThrows(IllegalFileFormatException.class, () -> CheckFiles.detectHeaderPresence(header, file4, false));
-        Assertions.assertEquals("L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : testA\ttestB\ttestC\ttestD\ttestE\ttestF\ttestG\ttestH\ttestI\ttestJ\ttestK\ttestL\ttestM\ttestN\ttestO\ttestP\ttestQ\ttestR\ttestS\ttestT\ttestU\ttestV\ttestW\ttestX\ttestY et best_ppn", erreur4.getMessage());
+        CheckFiles.detectHeaderPresence(header, file4, false);
         file4.deleteOnExit();
 
         // Test avec header à 24 colonnes
@@ -158,6 +186,21 @@ class CheckFilesTest {
         file7.deleteOnExit();
     }
 
+    @Test
+    void detectOfHeaderColonnesReordonnees() throws IllegalFileFormatException {
+        String header = "publication_title\tprint_identifier\tonline_identifier";
+
+        // colonnes dans un ordre différent, alias bestppn et colonne propre au fournisseur
+        KbartColumns columns = CheckFiles.checkHeader(header, "online_identifier\tbestppn\tPublication_Title \tprovider_id\tprint_identifier", false);
+        Assertions.assertEquals(2, columns.index(KBART_COLUMN.publication_title));
+        Assertions.assertEquals(1, columns.index(KBART_COLUMN.best_ppn));
+
+        // colonne présente deux fois
+        IllegalFileFormatException erreur = Assertions.assertThrows(IllegalFileFormatException.class,
+                () -> CheckFiles.checkHeader(header, "publication_title\tprint_identifier\tonline_identifier\tprint_identifier", false));
+        Assertions.assertEquals("L'en tete du fichier est incorrecte. L’en tête devrait être comme ceci : " + header + " et best_ppn", erreur.getMessage());
+    }
+
     @Test
     void detectOptionError() throws IOException {
         this.file = new File("test3_BYPASS.tsv");
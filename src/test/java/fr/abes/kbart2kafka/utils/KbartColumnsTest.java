@@ -0,0 +1,37 @@
+package fr.abes.kbart2kafka.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+class KbartColumnsTest {
+
+    @Test
+    void colonnesDansLOrdreKbart() throws IOException {
+        String content = "print_identifier\tpublication_title\tfournisseur\tbestppn\n0001-4842\tLe titre\tinterne\t123456789\n\tSans ppn\tinterne\n";
+        try (KbartTokenizer tokenizer = new KbartTokenizer(Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))))) {
+            Assertions.assertTrue(tokenizer.nextLine());
+            KbartColumns columns = KbartColumns.compile(tokenizer.line());
+            Assertions.assertEquals(4, columns.getColumnCount());
+            Assertions.assertEquals(2, columns.getMinFieldCount());
+            Assertions.assertFalse(columns.contains(KBART_COLUMN.online_identifier));
+
+            Assertions.assertTrue(tokenizer.nextLine());
+            String[] fields = columns.fields(tokenizer);
+            Assertions.assertEquals(KBART_COLUMN.values().length, fields.length);
+            Assertions.assertEquals("Le titre", fields[KBART_COLUMN.publication_title.ordinal()]);
+            Assertions.assertEquals("0001-4842", fields[KBART_COLUMN.print_identifier.ordinal()]);
+            Assertions.assertEquals("", fields[KBART_COLUMN.online_identifier.ordinal()]);
+            Assertions.assertEquals("123456789", fields[KBART_COLUMN.best_ppn.ordinal()]);
+
+            Assertions.assertTrue(tokenizer.nextLine());
+            fields = columns.fields(tokenizer);
+            Assertions.assertEquals("", fields[KBART_COLUMN.print_identifier.ordinal()]);
+            Assertions.assertNull(fields[KBART_COLUMN.best_ppn.ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package fr.abes.kbart2kafka.utils;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+class KbartFilesTest {
+    private static final File DIR = new File("target/kbartfiles");
+
+    @Test
+    void tsvName() {
+        Assertions.assertEquals("PROVIDER_PACKAGE_2023-01-01.tsv", KbartFiles.tsvName("PROVIDER_PACKAGE_2023-01-01.tsv"));
+        Assertions.assertEquals("PROVIDER_PACKAGE_2023-01-01.tsv", KbartFiles.tsvName("PROVIDER_PACKAGE_2023-01-01.tsv.gz"));
+        Assertions.assertEquals("PROVIDER_PACKAGE_2023-01-01_FORCE.tsv", KbartFiles.tsvName("PROVIDER_PACKAGE_2023-01-01_FORCE.tsv.zst"));
+        Assertions.assertEquals("PROVIDER_PACKAGE_2023-01-01.tsv", KbartFiles.tsvName("PROVIDER_PACKAGE_2023-01-01.ZIP"));
+        Assertions.assertFalse(KbartFiles.isKbart("PROVIDER_PACKAGE_2023-01-01.gz"));
+    }
+
+    @Test
+    void openCompressed() throws IOException {
+        String content = "header\tcol\n" + "ligne\t1\n".repeat(20000);
+        File gz = new File(DIR, "PROVIDER_PACKAGE_2023-01-01.tsv.gz");
+        try (OutputStream out = new GZIPOutputStream(newFile(gz))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        File zst = new File(DIR, "PROVIDER_PACKAGE_2023-01-01.tsv.zst");
+        try (OutputStream out = new ZstdOutputStream(newFile(zst))) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        File zip = new File(DIR, "PROVIDER_PACKAGE_2023-01-01.zip");
+        try (ZipOutputStream out = new ZipOutputStream(newFile(zip))) {
+            out.putNextEntry(new ZipEntry("PROVIDER_PACKAGE_2023-01-01.tsv"));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        for (File file : List.of(gz, zst, zip)) {
+            Assertions.assertEquals(content, String.join("\n", lines(file)) + "\n", file.getName());
+        }
+    }
+
+    @Test
+    void openZipPlusieursFichiers() throws IOException {
+        File zip = new File(DIR, "PROVIDER_PACKAGE_2023-01-02.zip");
+        try (ZipOutputStream out = new ZipOutputStream(newFile(zip))) {
+            out.putNextEntry(new ZipEntry("a.tsv"));
+            out.putNextEntry(new ZipEntry("b.tsv"));
+        }
+        ZipException erreur = Assertions.assertThrows(ZipException.class, () -> KbartTokenizer.open(zip));
+        Assertions.assertEquals("L'archive PROVIDER_PACKAGE_2023-01-02.zip doit contenir un seul fichier", erreur.getMessage());
+    }
+
+    private static List<String> lines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (KbartTokenizer tokenizer = new KbartTokenizer(KbartFiles.openChannel(file), 1024)) {
+            while (tokenizer.nextLine()) {
+                lines.add(tokenizer.line());
+            }
+        }
+        return lines;
+    }
+
+    private static OutputStream newFile(File file) throws IOException {
+        DIR.mkdirs();
+        return new FileOutputStream(file);
+    }
+}
@@ -0,0 +1,49 @@
+package fr.abes.kbart2kafka.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+class KbartTokenizerTest {
+
+    private KbartTokenizer tokenizer(String content, int bufferSize) {
+        return new KbartTokenizer(Channels.newChannel(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8))), bufferSize);
+    }
+
+    @Test
+    void decoupageCommeSplit() throws IOException {
+        String content = "\uFEFFtitre\tissn\tdate\r\nélément accentué\t\t2024\t\t\n\n\t\t\nsans tabulation";
+        try (KbartTokenizer tokenizer = tokenizer(content, 4)) {
+            String[] lignesAttendues = {"titre\tissn\tdate", "élément accentué\t\t2024\t\t", "", "\t\t", "sans tabulation"};
+            for (String ligneAttendue : lignesAttendues) {
+                Assertions.assertTrue(tokenizer.nextLine());
+                Assertions.assertEquals(ligneAttendue, tokenizer.line());
+                Assertions.assertArrayEquals(ligneAttendue.split("\t"), tokenizer.fields());
+                Assertions.assertEquals(ligneAttendue.split("\t").length, tokenizer.fieldCount());
+            }
+            Assertions.assertFalse(tokenizer.nextLine());
+            Assertions.assertEquals(5, tokenizer.getLineNumber());
+        }
+    }
+
+    @Test
+    void accesColonnes() throws IOException {
+        try (KbartTokenizer tokenizer = tokenizer("titre\tserial\t\n  \n", 1024)) {
+            Assertions.assertTrue(tokenizer.nextLine());
+            Assertions.assertTrue(tokenizer.hasTabulation());
+            Assertions.assertFalse(tokenizer.isBlank());
+            Assertions.assertTrue(tokenizer.fieldEquals(1, "serial".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertFalse(tokenizer.fieldEquals(0, "serial".getBytes(StandardCharsets.UTF_8)));
+            Assertions.assertTrue(tokenizer.isFieldEmpty(2));
+            Assertions.assertEquals("", tokenizer.field(5));
+            Assertions.assertTrue(tokenizer.nextLine());
+            Assertions.assertTrue(tokenizer.isBlank());
+            Assertions.assertFalse(tokenizer.hasTabulation());
+            Assertions.assertFalse(tokenizer.nextLine());
+        }
+    }
+}
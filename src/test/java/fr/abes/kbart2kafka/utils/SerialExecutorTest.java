@@ -0,0 +1,42 @@
+package fr.abes.kbart2kafka.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+class SerialExecutorTest {
+
+    @Test
+    void ordreDesTachesConserve() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Integer> executed = new ArrayList<>();
+        SerialExecutor lane = new SerialExecutor(pool);
+        for (int i = 0; i < 10_000; i++) {
+            int n = i;
+            // pas de synchronisation : une seule tâche de la file s'exécute à la fois
+            lane.execute(() -> executed.add(n));
+        }
+        pool.shutdown();
+        Assertions.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(IntStream.range(0, 10_000).boxed().toList(), executed);
+    }
+
+    @Test
+    void tacheRefuseeApresArret() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        SerialExecutor lane = new SerialExecutor(pool);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> lane.execute(() -> {
+        }));
+        // la tâche refusée ne bloque pas la file
+        Assertions.assertThrows(RejectedExecutionException.class, () -> lane.execute(() -> {
+        }));
+    }
+}
@@ -0,0 +1,55 @@
+package fr.abes.kbart2kafka.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+class Utf8ValidatorTest {
+
+    @Test
+    void sequencesIncorrectes() {
+        byte[] correct = "Titre accentué\tœuvre 𝄞 €".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(-1, Utf8Validator.indexOfInvalid(correct, 0, correct.length));
+
+        // é en ISO-8859-1
+        byte[] latin1 = "Titre accentué".getBytes(StandardCharsets.ISO_8859_1);
+        Assertions.assertEquals(13, Utf8Validator.indexOfInvalid(latin1, 0, latin1.length));
+        Assertions.assertEquals(1, Utf8Validator.invalidLength(latin1, 13, latin1.length));
+
+        // séquence de 3 octets interrompue, forme non minimale, demi-code d'indirection, caractère de remplacement
+        byte[][] incorrects = {{'a', (byte) 0xE2, (byte) 0x82, 'b'}, {'a', (byte) 0xC0, (byte) 0xAF}, {'a', (byte) 0xED, (byte) 0xA0, (byte) 0x80},
+                {'a', (byte) 0xEF, (byte) 0xBF, (byte) 0xBD}};
+        int[] longueurs = {2, 1, 1, 3};
+        for (int i = 0; i < incorrects.length; i++) {
+            Assertions.assertEquals(1, Utf8Validator.indexOfInvalid(incorrects[i], 0, incorrects[i].length));
+            Assertions.assertEquals(longueurs[i], Utf8Validator.invalidLength(incorrects[i], 1, incorrects[i].length));
+        }
+
+        // séquence coupée par la fin de la ligne
+        byte[] euro = "12345678€".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(8, Utf8Validator.indexOfInvalid(euro, 0, euro.length - 1));
+    }
+
+    @Test
+    void commeLeDecodeurDuJdk() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[24];
+        for (int n = 0; n < 100_000; n++) {
+            for (int i = 0; i < bytes.length; i++) {
+                // majorité d'octets ASCII, comme dans un fichier kbart
+                bytes[i] = (byte) (random.nextInt(4) == 0 ? 0x80 + random.nextInt(0x78) : random.nextInt(0x80));
+            }
+            boolean decodable;
+            try {
+                decodable = !StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString().contains("�");
+            } catch (CharacterCodingException e) {
+                decodable = false;
+            }
+            Assertions.assertEquals(decodable, Utf8Validator.indexOfInvalid(bytes, 0, bytes.length) < 0);
+        }
+    }
+}
@@ -3,11 +3,13 @@ package fr.abes.kbart2kafka.utils;
 import fr.abes.kbart2kafka.exception.IllegalDateException;
 import fr.abes.kbart2kafka.exception.IllegalPackageException;
 import fr.abes.kbart2kafka.exception.IllegalProviderException;
+import org.assertj.core.util.Lists;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -83,8 +85,24 @@ class UtilsTest {
         Assertions.assertEquals("2024-03-01", Utils.reformatDateKbart(date));
         date = "2024";
         Assertions.assertEquals("2024-01-01", Utils.reformatDateKbart(date));
-        date = "jklsdfhlksjf";
-        String finalDate = date;
-        Assertions.assertThrows(IllegalDateException.class, () -> Utils.reformatDateKbart(finalDate));
+        date = " 2024-03 ";
+        Assertions.assertEquals("2024-03-01", Utils.reformatDateKbart(date));
+        date = "2024-02-29";
+        Assertions.assertEquals("2024-02-29", Utils.reformatDateKbart(date));
+        for (String dateKO : Lists.newArrayList("jklsdfhlksjf", "abc2020xyz", "2020-13", "2023-02-29", "2020-04-31", "2020-1-1", "2020/01", "196-01-13", "2020-01-01T00:00")) {
+            Assertions.assertThrows(IllegalDateException.class, () -> Utils.reformatDateKbart(dateKO), dateKO);
+        }
+    }
+
+    @Test
+    @DisplayName("Test reconnaissance du format de date sur les octets")
+    void detectDateFormat() {
+        byte[] ligne = "titre\t2024\t2024-03\t2024-03-03\t\t20x4".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(DATE_FORMAT.YYYY, KbartDateNormalizer.detect(ligne, 6, 4));
+        Assertions.assertEquals(DATE_FORMAT.YYYY_MM, KbartDateNormalizer.detect(ligne, 11, 7));
+        Assertions.assertEquals(DATE_FORMAT.YYYY_MM_DD, KbartDateNormalizer.detect(ligne, 19, 10));
+        Assertions.assertEquals(DATE_FORMAT.EMPTY, KbartDateNormalizer.detect(ligne, 30, 0));
+        Assertions.assertEquals(DATE_FORMAT.INVALID, KbartDateNormalizer.detect(ligne, 31, 4));
+        Assertions.assertEquals(DATE_FORMAT.INVALID, KbartDateNormalizer.detect(ligne, 0, 5));
     }
 }